@@ -0,0 +1,498 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/** Measures the hot paths of Gitlet against synthetic repositories, in the
+ * manner of JMH. Usage:
+ *
+ *   java gitlet.Benchmarks [--files=N,...] [--size=BYTES,...]
+ *       [--depth=N,...] [--branches=N,...] [--fsync=MODE,...] [--warmup=N]
+ *       [--iterations=N] [--time=MILLIS] [--include=REGEX] [--out=FILE]
+ *
+ * Each of the five parameters takes a comma-separated list of values, and
+ * the benchmarks are run once for every combination of them. The first
+ * four describe the repository; MODE is none, batch or always, and is
+ * given to the Transaction as GITLET_FSYNC, so that the cost of each
+ * durability can be seen in the commit benchmark. Gitlet keeps its
+ * repository in the current directory, so each combination is run in a
+ * fresh JVM in a fresh temporary directory, where a SyntheticRepo is
+ * built first. Each benchmark whose name matches
+ * REGEX is then run for WARMUP iterations that are thrown away and
+ * ITERATIONS that are kept, each calling it as many times as fit in
+ * MILLIS milliseconds, and scored by its average time per call.
+ *
+ * The results are written to FILE as a JSON array in the format of JMH's
+ * JSON output, so that the tools that read that can read these too: one
+ * object per benchmark and combination, with the parameters, the mean
+ * score in microseconds per call, its 99.9% confidence interval and the
+ * score of every iteration.
+ *
+ * The diff benchmarks compare texts of their own rather than files of the
+ * repository: a 4.2 MB text against a copy with 2000 lines replaced at
+ * random, and against an entirely different text of the same size.
+ * @author Divya Sivanandan */
+public class Benchmarks {
+
+    /** Runs the benchmarks as described above with options ARGS, and
+     *  exits with a nonzero status if any of them failed. */
+    public static void main(String... args) {
+        try {
+            Map<String, String> options = parse(args);
+            if (options.containsKey(RESULT)) {
+                fork(options);
+            } else {
+                drive(options);
+            }
+        } catch (GitletException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(1);
+        } catch (Exception excp) {
+            excp.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /** Returns the options in ARGS, each of the form --NAME=VALUE, merged
+     *  with the defaults. Throws GitletException for anything else. */
+    private static Map<String, String> parse(String... args) {
+        Map<String, String> result = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = arg.startsWith("--") && eq > 2
+                ? arg.substring(2, eq) : null;
+            if (name == null
+                || !result.containsKey(name) && !name.equals(RESULT)) {
+                throw Utils.error("Unknown option: %s.", arg);
+            }
+            result.put(name, arg.substring(eq + 1));
+        }
+        for (String param : PARAMS) {
+            for (String value : result.get(param).split(",")) {
+                if (param.equals(FSYNC)) {
+                    durability(value);
+                } else {
+                    count(param, value);
+                }
+            }
+        }
+        for (String setting : new String[] {"warmup", "iterations", "time"}) {
+            count(setting, result.get(setting));
+        }
+        return result;
+    }
+
+    /** Returns the value of option NAME, VALUE, as a non-negative count.
+     *  Throws GitletException if it is not one. */
+    private static int count(String name, String value) {
+        int n;
+        try {
+            n = Integer.parseInt(value);
+        } catch (NumberFormatException excp) {
+            n = -1;
+        }
+        if (n < 0) {
+            throw Utils.error("Bad value for --%s: %s.", name, value);
+        }
+        return n;
+    }
+
+    /** Returns the durability named by VALUE, the value of the fsync
+     *  option. Throws GitletException if it names none. */
+    private static Transaction.Durability durability(String value) {
+        try {
+            return Transaction.Durability.valueOf(
+                value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException excp) {
+            throw Utils.error("Bad value for --%s: %s.", FSYNC, value);
+        }
+    }
+
+    /** Runs every combination of the parameters in OPTIONS in a
+     *  JVM of its own, and writes all of their results to the output
+     *  file. */
+    private static void drive(Map<String, String> options)
+        throws IOException, InterruptedException {
+        List<Map<String, String>> combos = new ArrayList<>();
+        combos.add(new LinkedHashMap<>());
+        for (String param : PARAMS) {
+            List<Map<String, String>> next = new ArrayList<>();
+            for (Map<String, String> combo : combos) {
+                for (String value : options.get(param).split(",")) {
+                    Map<String, String> c = new LinkedHashMap<>(combo);
+                    c.put(param, value);
+                    next.add(c);
+                }
+            }
+            combos = next;
+        }
+        List<String> entries = new ArrayList<>();
+        for (Map<String, String> combo : combos) {
+            System.out.println("# " + combo);
+            Path dir = Files.createTempDirectory("gitlet-bench");
+            Path result = dir.resolveSibling(dir.getFileName() + ".json");
+            List<String> cmd = new ArrayList<>();
+            cmd.add(java());
+            cmd.add("-cp");
+            cmd.add(classPath());
+            cmd.add(Benchmarks.class.getName());
+            Map<String, String> forked = new LinkedHashMap<>(options);
+            forked.putAll(combo);
+            forked.put(RESULT, result.toString());
+            for (Map.Entry<String, String> o : forked.entrySet()) {
+                cmd.add("--" + o.getKey() + "=" + o.getValue());
+            }
+            ProcessBuilder builder =
+                new ProcessBuilder(cmd).directory(dir.toFile()).inheritIO();
+            builder.environment().put(Transaction.VARIABLE,
+                                      combo.get(FSYNC));
+            try {
+                int status = builder.start().waitFor();
+                if (status != 0) {
+                    throw Utils.error("Benchmarks failed for %s.", combo);
+                }
+                String entry = Files.readString(result,
+                                                StandardCharsets.UTF_8);
+                if (!entry.isEmpty()) {
+                    entries.add(entry);
+                }
+            } finally {
+                delete(dir);
+                Files.deleteIfExists(result);
+            }
+        }
+        File out = new File(options.get("out"));
+        Utils.writeContents(out, "[\n" + String.join(",\n", entries)
+                            + "\n]\n");
+        System.out.printf("# Wrote the results of %d combinations to %s%n",
+                          entries.size(), out);
+    }
+
+    /** Builds the SyntheticRepo given by the single-valued repository
+     *  parameters in OPTIONS in the current directory, runs the benchmarks
+     *  against it, and writes their results, as JSON objects separated by
+     *  commas, to the file named by the result option. */
+    private static void fork(Map<String, String> options) throws Exception {
+        int files = count("files", options.get("files"));
+        int branches = count("branches", options.get("branches"));
+        SyntheticRepo.build(Math.max(1, files),
+                            count("size", options.get("size")),
+                            Math.max(1, count("depth", options.get("depth"))),
+                            branches);
+        Pattern include = Pattern.compile(options.get("include"));
+        int warmup = count("warmup", options.get("warmup"));
+        int iterations = Math.max(1, count("iterations",
+                                           options.get("iterations")));
+        long millis = count("time", options.get("time"));
+        List<String> out = new ArrayList<>();
+        for (Map.Entry<String, Callable<Object>> b
+                 : benchmarks(branches).entrySet()) {
+            if (!include.matcher(b.getKey()).find()) {
+                continue;
+            }
+            measure(b.getValue(), warmup, millis);
+            double[] scores = measure(b.getValue(), iterations, millis);
+            double mean = mean(scores), error = error(scores);
+            System.out.printf(Locale.ROOT, "%-16s %12.3f +- %.3f us/op%n",
+                              b.getKey(), mean, error);
+            out.add(json(b.getKey(), options, warmup, iterations, millis,
+                         scores));
+        }
+        Utils.writeContents(new File(options.get(RESULT)),
+                            String.join(",\n", out));
+    }
+
+    /** Returns the benchmarks, by name, against the repository in the
+     *  current directory, which has BRANCHES side branches. Each returns
+     *  what it computes, so that the computation is not optimized away. */
+    private static Map<String, Callable<Object>> benchmarks(int branches)
+        throws IOException {
+        byte[] contents =
+            Utils.readContents(new File(SyntheticRepo.fileName(0)));
+        ObjectId head = Branch.fromFile("master").getHead();
+        Commit commit = Commit.fromFile(head);
+        File serialized = File.createTempFile("commit", null);
+        serialized.deleteOnExit();
+        Utils.writeObject(serialized, commit);
+        Map<String, Callable<Object>> result = new LinkedHashMap<>();
+        result.put("sha1", () -> Utils.sha1(contents));
+        result.put("serialize", () -> Utils.serialize(commit));
+        result.put("readObject",
+                   () -> Utils.readObject(serialized, Commit.class));
+        result.put("commitFromFile", () -> {
+            CommitCache.clear();
+            return Commit.fromFile(head);
+        });
+        if (branches > 0) {
+            GitTree tree = GitTree.fromFile();
+            Branch master = Branch.fromFile("master");
+            Branch side = Branch.fromFile(SyntheticRepo.branchName(1));
+            result.put("findSplit", () -> tree.findSplit(master, side));
+        }
+        result.put("setModified", () -> {
+            Transaction.begin();
+            Command status = new Command(new String[] {"status"});
+            status.setModified();
+            status.finish();
+            return status;
+        });
+        Random random = new Random(~SyntheticRepo.SEED);
+        byte[] text = lines(DIFF_LINES, random);
+        byte[] scattered = text.clone();
+        for (int k = 0; k < DIFF_EDITS; k += 1) {
+            byte[] line = lines(1, random);
+            System.arraycopy(line, 0, scattered,
+                             random.nextInt(DIFF_LINES) * line.length,
+                             line.length);
+        }
+        byte[] different = lines(DIFF_LINES, random);
+        result.put("diffScattered", () -> diff(text, scattered));
+        result.put("diffDifferent", () -> diff(text, different));
+        result.put("commit", () -> {
+            String[] add = new String[COMMIT_FILES + 1];
+            add[0] = "add";
+            for (int i = 1; i <= COMMIT_FILES; i += 1) {
+                add[i] = SyntheticRepo.fileName(i - 1);
+                SyntheticRepo.write(add[i], contents.length, random);
+            }
+            Main.run(add);
+            Main.run("commit", "benchmark");
+            return add;
+        });
+        return result;
+    }
+
+    /** Returns N lines of random letters from RANDOM, each LINE_LENGTH
+     *  bytes long with its newline. */
+    private static byte[] lines(int n, Random random) {
+        byte[] result = new byte[n * LINE_LENGTH];
+        for (int i = 0; i < result.length; i += 1) {
+            if (i % LINE_LENGTH == LINE_LENGTH - 1) {
+                result[i] = '\n';
+            } else {
+                result[i] = (byte) ('a' + random.nextInt(LETTERS));
+            }
+        }
+        return result;
+    }
+
+    /** Computes the differences between BEFORE and AFTER and prints them
+     *  as a unified diff to nowhere, as the diff command would. Returns
+     *  the Diff. */
+    private static Diff diff(byte[] before, byte[] after) throws IOException {
+        Diff result = new Diff(before, after);
+        result.print(OutputStream.nullOutputStream(), "a/f", "b/f");
+        return result;
+    }
+
+    /** Runs OP for ITERATIONS iterations of at least MILLIS milliseconds
+     *  each, and returns the average time per call of each iteration in
+     *  microseconds. */
+    private static double[] measure(Callable<Object> op, int iterations,
+                                    long millis) throws Exception {
+        double[] result = new double[iterations];
+        for (int i = 0; i < iterations; i += 1) {
+            long calls = 0, start = System.nanoTime(), now;
+            long end = start + millis * NANOS_PER_MILLI;
+            do {
+                _sink = op.call();
+                calls += 1;
+                now = System.nanoTime();
+            } while (now < end);
+            result[i] = (double) (now - start) / NANOS_PER_MICRO / calls;
+        }
+        return result;
+    }
+
+    /** Returns the mean of SCORES. */
+    private static double mean(double[] scores) {
+        double sum = 0;
+        for (double s : scores) {
+            sum += s;
+        }
+        return sum / scores.length;
+    }
+
+    /** Returns the half-width of the 99.9% confidence interval of the mean
+     *  of SCORES, using Student's t distribution, or NaN if there is only
+     *  one score. */
+    private static double error(double[] scores) {
+        int n = scores.length;
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double mean = mean(scores), squares = 0;
+        for (double s : scores) {
+            squares += (s - mean) * (s - mean);
+        }
+        return quantile(n - 1) * Math.sqrt(squares / (n - 1) / n);
+    }
+
+    /** Returns the 0.9995 quantile of Student's t distribution with DF
+     *  degrees of freedom: exact for the smallest, and otherwise from the
+     *  Cornish-Fisher expansion about the normal quantile, which is within
+     *  5% for four degrees of freedom and closer beyond. */
+    private static double quantile(int df) {
+        if (df <= SMALL_T.length) {
+            return SMALL_T[df - 1];
+        }
+        double z = Z_999, v = df;
+        double z3 = z * z * z, z5 = z3 * z * z, z7 = z5 * z * z;
+        return z + (z3 + z) / (4 * v)
+            + (5 * z5 + 16 * z3 + 3 * z) / (96 * v * v)
+            + (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384 * v * v * v);
+    }
+
+    /** Returns the JMH-style JSON object for benchmark NAME run with
+     *  OPTIONS for WARMUP and ITERATIONS iterations of MILLIS milliseconds,
+     *  whose iterations scored SCORES. */
+    private static String json(String name, Map<String, String> options,
+                               int warmup, int iterations, long millis,
+                               double[] scores) {
+        double mean = mean(scores), error = error(scores);
+        StringBuilder params = new StringBuilder();
+        for (String param : PARAMS) {
+            params.append(params.length() == 0 ? "" : ", ")
+                .append(String.format("\"%s\" : \"%s\"", param,
+                                      options.get(param)));
+        }
+        StringBuilder raw = new StringBuilder();
+        for (double s : scores) {
+            raw.append(raw.length() == 0 ? "" : ", ").append(number(s));
+        }
+        return String.format(Locale.ROOT, "  {\n"
+            + "    \"benchmark\" : \"%s.%s\",\n"
+            + "    \"mode\" : \"avgt\",\n"
+            + "    \"threads\" : 1,\n"
+            + "    \"forks\" : 1,\n"
+            + "    \"jvm\" : \"%s\",\n"
+            + "    \"jdkVersion\" : \"%s\",\n"
+            + "    \"warmupIterations\" : %d,\n"
+            + "    \"warmupTime\" : \"%d ms\",\n"
+            + "    \"measurementIterations\" : %d,\n"
+            + "    \"measurementTime\" : \"%d ms\",\n"
+            + "    \"params\" : { %s },\n"
+            + "    \"primaryMetric\" : {\n"
+            + "      \"score\" : %s,\n"
+            + "      \"scoreError\" : %s,\n"
+            + "      \"scoreConfidence\" : [ %s, %s ],\n"
+            + "      \"scoreUnit\" : \"us/op\",\n"
+            + "      \"rawData\" : [ [ %s ] ]\n"
+            + "    }\n"
+            + "  }", Benchmarks.class.getName(), name,
+            escape(java()),
+            System.getProperty("java.version"), warmup, millis, iterations,
+            millis, params, number(mean), number(error),
+            number(mean - error), number(mean + error), raw);
+    }
+
+    /** Returns X as a JSON number, or null if it is not a number. */
+    private static String number(double x) {
+        if (Double.isNaN(x)) {
+            return "null";
+        }
+        return String.format(Locale.ROOT, "%.3f", x);
+    }
+
+    /** Returns S with the characters JSON does not allow in strings
+     *  escaped. */
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /** Returns the path of the java launcher of this JVM. */
+    private static String java() {
+        return Path.of(System.getProperty("java.home"), "bin", "java")
+            .toString();
+    }
+
+    /** Returns the class path of this JVM with every entry made absolute,
+     *  so that it holds in the directory of a forked JVM. */
+    private static String classPath() {
+        List<String> result = new ArrayList<>();
+        for (String entry
+                 : System.getProperty("java.class.path")
+                     .split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                result.add(new File(entry).getAbsolutePath());
+            }
+        }
+        return String.join(File.pathSeparator, result);
+    }
+
+    /** Deletes DIR and everything under it. */
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                .forEach(File::delete);
+        }
+    }
+
+    /** The parameter that chooses the durability of the Transaction. */
+    private static final String FSYNC = "fsync";
+
+    /** The parameters, in the order they vary. */
+    private static final String[] PARAMS = {
+        "files", "size", "depth", "branches", FSYNC
+    };
+
+    /** Every option and its default value. */
+    private static final Map<String, String> DEFAULTS = Map.of(
+        "files", "100", "size", "1024", "depth", "100", "branches", "2",
+        FSYNC, "batch", "warmup", "3", "iterations", "5", "time", "1000",
+        "include", ".*", "out", "benchmarks.json");
+
+    /** Number of files the commit benchmark changes in each commit. */
+    private static final int COMMIT_FILES = 10;
+
+    /** Number of lines in each text the diff benchmarks compare, which
+     *  makes each 4.2 MB. */
+    private static final int DIFF_LINES = 65_625;
+
+    /** Number of lines replaced at random places in the scattered-edit
+     *  text. */
+    private static final int DIFF_EDITS = 2000;
+
+    /** Length of a line of the texts, including its newline. */
+    private static final int LINE_LENGTH = 64;
+
+    /** Number of letters the texts are drawn from. */
+    private static final int LETTERS = 26;
+
+    /** The option, passed only to a forked JVM, naming the file it writes
+     *  its results to. */
+    private static final String RESULT = "result";
+
+    /** The 0.9995 quantiles of Student's t distribution with one to three
+     *  degrees of freedom. */
+    private static final double[] SMALL_T = {636.619, 31.599, 12.924};
+
+    /** The 0.9995 quantile of the standard normal distribution. */
+    private static final double Z_999 = 3.2905;
+
+    /** Nanoseconds in a millisecond. */
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    /** Nanoseconds in a microsecond. */
+    private static final double NANOS_PER_MICRO = 1_000;
+
+    /** The result of the latest call of a benchmark. Written so that the
+     *  JIT cannot find the call's result unused. */
+    private static volatile Object _sink;
+
+}
@@ -0,0 +1,104 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/** Builds a synthetic Gitlet repository in the current directory for the
+ * Benchmarks to run against. The repository has FILES tracked files of
+ * SIZE bytes each, a master branch DEPTH commits deep, and BRANCHES side
+ * branches that fork from the first commit and each add half as many
+ * commits again. Every commit after the first changes one file. A tenth of
+ * the files are then changed in the working directory without being
+ * staged, so that status has something to report. The contents come from
+ * a seeded Random, so the same parameters always give the same files.
+ * @author Divya Sivanandan */
+class SyntheticRepo {
+
+    /** Builds the repository described above in the current directory,
+     *  which must not already hold one. */
+    static void build(int files, int size, int depth, int branches)
+        throws IOException {
+        Random random = new Random(SEED);
+        String[] names = new String[files];
+        for (int i = 0; i < files; i += 1) {
+            names[i] = fileName(i);
+            write(names[i], size, random);
+        }
+        Main.run("init");
+        String[] add = new String[files + 1];
+        add[0] = "add";
+        System.arraycopy(names, 0, add, 1, files);
+        Main.run(add);
+        Main.run("commit", "base");
+        for (int b = 1; b <= branches; b += 1) {
+            Main.run("branch", branchName(b));
+        }
+        for (int c = 1; c < depth; c += 1) {
+            change(names[c % files], size, random, "master " + c);
+        }
+        for (int b = 1; b <= branches; b += 1) {
+            Main.run("checkout", branchName(b));
+            for (int c = 1; c <= Math.max(1, depth / 2); c += 1) {
+                change(names[(b * STRIDE + c) % files], size, random,
+                       branchName(b) + " " + c);
+            }
+        }
+        if (branches > 0) {
+            Main.run("checkout", "master");
+        }
+        for (int i = 0; i < files; i += DIRTY) {
+            write(names[i], size, random);
+        }
+    }
+
+    /** Returns the name of the Ith file. */
+    static String fileName(int i) {
+        return String.format("f%05d.txt", i);
+    }
+
+    /** Returns the name of the Bth side branch, counting from one. */
+    static String branchName(int b) {
+        return "side" + b;
+    }
+
+    /** Rewrites the file NAME with SIZE bytes from RANDOM and commits the
+     *  change with message MSG. */
+    private static void change(String name, int size, Random random,
+                               String msg) throws IOException {
+        write(name, size, random);
+        Main.run("add", name);
+        Main.run("commit", msg);
+    }
+
+    /** Writes SIZE bytes of lines of random letters from RANDOM to the
+     *  file NAME. */
+    static void write(String name, int size, Random random) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i += 1) {
+            if (i % LINE == LINE - 1) {
+                data[i] = '\n';
+            } else {
+                data[i] = (byte) ('a' + random.nextInt(LETTERS));
+            }
+        }
+        Utils.writeContents(new File(name), data);
+    }
+
+    /** Seed of the Random that the contents come from. */
+    static final long SEED = 61;
+
+    /** Length of a line of contents, including its newline. */
+    private static final int LINE = 64;
+
+    /** Number of letters the contents are drawn from. */
+    private static final int LETTERS = 26;
+
+    /** Spacing of the files each side branch changes, so that branches
+     *  change different files. */
+    private static final int STRIDE = 7;
+
+    /** One in this many files is left changed in the working directory. */
+    private static final int DIRTY = 10;
+
+}
@@ -0,0 +1,514 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** A pack of file contents in which successive versions of the same file
+ * are stored as delta chains. Each record in the pack is a type byte, the
+ * content id of the record's base if it is a delta, and the 64-bit length
+ * and bytes of the deflated payload: either the whole contents, or a Delta
+ * that rebuilds them from the base.
+ * A PackIndex maps content ids to the offsets of records. Records are read
+ * with positional reads rather than through a mapping of the pack, so the
+ * pack may grow past 2 GiB.
+ *
+ * The pack is written by repack(), which walks the history of every path
+ * from its newest version to its oldest and stores each version as a
+ * delta against the next newer one, so the versions that are checked out
+ * most often are the cheapest to read. No chain is longer than MAX_DEPTH
+ * deltas. Rebuilt contents are kept in a small cache, so that the bases
+ * shared by several versions are only rebuilt once per command. Each
+ * repack writes a new generation of the pack and its index, as PackIndex
+ * describes, and the pack and index of one generation are always opened
+ * together.
+ * @author Divya Sivanandan */
+class BlobPack {
+
+    /** Folder that contains the pack and its index. */
+    static final File PACK_FOLDER = Utils.join(ObjectStore.OBJECTS_FOLDER,
+                                               "pack");
+
+    /** The name of the pack, which its files are named after. */
+    static final String PACK_NAME = "blobs";
+
+    /** Largest number of deltas applied to rebuild any one version. */
+    static final int MAX_DEPTH = 10;
+
+    /** Contents larger than this many bytes are always stored whole. */
+    static final int DELTA_LIMIT = 2 << 20;
+
+    /** Largest total size in bytes of the rebuilt contents kept cached. */
+    static final int CACHE_LIMIT = 16 << 20;
+
+    /** Type of a record holding whole contents. */
+    private static final byte FULL = 0;
+
+    /** Type of a record holding a delta. */
+    private static final byte DELTA = 1;
+
+    /** Returns true if the contents with content id ID are in the pack. */
+    static boolean contains(ObjectId id) {
+        return PackIndex.find(index(), id) >= 0;
+    }
+
+    /** Returns the time the pack was written or last touched, in
+     *  milliseconds since the epoch, or 0 if there is no pack. */
+    static long time() {
+        index();
+        return _pack.lastModified();
+    }
+
+    /** Touches the pack, as storing contents that it already holds does,
+     *  so that the GarbageCollector treats everything in it as recent. */
+    static void touch() {
+        index();
+        _pack.setLastModified(System.currentTimeMillis());
+    }
+
+    /** Returns the content id of every object in the pack in sorted
+     *  order. */
+    static List<ObjectId> ids() {
+        ByteBuffer index = index();
+        List<ObjectId> result = new ArrayList<>(PackIndex.size(index));
+        for (int k = 0; k < PackIndex.size(index); k += 1) {
+            result.add(PackIndex.id(index, k));
+        }
+        return result;
+    }
+
+    /** Returns a stream of the contents with content id ID, which must be
+     *  in the pack. Whole contents are streamed from the pack file; deltas
+     *  are rebuilt in memory. */
+    static InputStream open(ObjectId id) throws IOException {
+        long at = offset(id);
+        if (readAt(at, 1).get() == FULL) {
+            FileChannel ch = FileChannel.open(_pack.toPath());
+            ch.position(at + 1 + Long.BYTES);
+            return new InflaterInputStream(Channels.newInputStream(ch));
+        }
+        return new ByteArrayInputStream(read(id));
+    }
+
+    /** Returns the contents with content id ID, which must be in the
+     *  pack. Synchronized, since several checkout threads may share the
+     *  cache. */
+    static synchronized byte[] read(ObjectId id) {
+        byte[] result = cache().get(id);
+        if (result != null) {
+            return result;
+        }
+        long at = offset(id);
+        ObjectId base = null;
+        if (readAt(at, 1).get() == DELTA) {
+            base = ObjectId.fromAscii(readAt(at + 1, Utils.UID_LENGTH), 0);
+            at += Utils.UID_LENGTH;
+        }
+        byte[] payload = inflate(at + 1);
+        result = base == null ? payload : Delta.apply(read(base), payload);
+        remember(id, result);
+        return result;
+    }
+
+    /** Rewrites the pack so that it holds every version of every file
+     *  committed so far, with successive versions of the same path stored
+     *  as deltas wherever that saves at least half of the space, and
+     *  deletes the loose objects that were packed, along with any fan-out
+     *  folders left empty. Prints how much space the packed contents took
+     *  before and after. */
+    static void repack() {
+        repack(null);
+    }
+
+    /** Rewrites the pack as repack() does, except that if LIVE is not null
+     *  the pack holds exactly the stored objects whose content ids are in
+     *  LIVE: objects that no commit's files refer to, such as FileTrees,
+     *  are packed whole, packed objects not in LIVE are dropped, and
+     *  nothing is printed. */
+    static void repack(Set<ObjectId> live) {
+        TreeMap<ObjectId, Long> entries = new TreeMap<>();
+        HashMap<ObjectId, Integer> depths = new HashMap<>();
+        int gen = PackIndex.generation(PACK_FOLDER, PACK_NAME) + 1;
+        long before = size(gen - 1);
+        int deltas = 0;
+        PACK_FOLDER.mkdirs();
+        try {
+            File tmp = File.createTempFile("pack", null, PACK_FOLDER);
+            try (FileChannel ch = FileChannel.open(tmp.toPath(),
+                                                   StandardOpenOption.WRITE)) {
+                for (List<ObjectId> history : histories().values()) {
+                    ObjectId newer = null;
+                    byte[] newerBytes = null;
+                    for (int k = history.size() - 1; k >= 0; k -= 1) {
+                        ObjectId id = history.get(k);
+                        byte[] bytes = null;
+                        if (!entries.containsKey(id)) {
+                            before += ObjectStore.objectFile(id).length();
+                            bytes = readLimited(id);
+                            byte[] delta = null;
+                            if (newer != null && bytes != null
+                                && depths.get(newer) < MAX_DEPTH) {
+                                if (newerBytes == null) {
+                                    newerBytes = readLimited(newer);
+                                }
+                                delta = encode(newerBytes, bytes);
+                            }
+                            if (delta == null) {
+                                entries.put(id, writeFull(ch, id, bytes));
+                                depths.put(id, 0);
+                            } else {
+                                entries.put(id, writeRecord(ch, newer,
+                                                            delta));
+                                depths.put(id, depths.get(newer) + 1);
+                                deltas += 1;
+                            }
+                        }
+                        newer = id;
+                        newerBytes = bytes;
+                    }
+                }
+                for (ObjectId id : live == null ? ids() : live) {
+                    if (!entries.containsKey(id) && ObjectStore.exists(id)) {
+                        before += ObjectStore.objectFile(id).length();
+                        entries.put(id, writeFull(ch, id, null));
+                    }
+                }
+            }
+            File tmpIndex = File.createTempFile("idx", null, PACK_FOLDER);
+            ByteBuffer out =
+                ByteBuffer.allocate(entries.size() * PackIndex.ENTRY_SIZE);
+            for (Map.Entry<ObjectId, Long> e : entries.entrySet()) {
+                out.put(PackIndex.entry(e.getKey(), e.getValue()));
+            }
+            Utils.writeContents(tmpIndex, out.array());
+            Transaction.force(tmp);
+            Transaction.force(tmpIndex);
+            PackIndex.install(tmp, tmpIndex, PACK_FOLDER, PACK_NAME, gen);
+        } catch (IOException excp) {
+            throw Utils.error("Could not write the blob pack.");
+        }
+        invalidate();
+        PackIndex.retain(PACK_FOLDER, PACK_NAME, gen);
+        for (ObjectId id : entries.keySet()) {
+            File obj = ObjectStore.objectFile(id);
+            obj.delete();
+            obj.getParentFile().delete();
+        }
+        long after = size(gen);
+        if (live != null) {
+            return;
+        }
+        Utils.message("Repacked %d objects, %d as deltas: %d bytes before, "
+                      + "%d bytes after, %d bytes saved.", entries.size(),
+                      deltas, before, after, before - after);
+    }
+
+    /** Returns the total size in bytes of the pack and index of generation
+     *  GEN. */
+    private static long size(int gen) {
+        return PackIndex.file(PACK_FOLDER, PACK_NAME, gen, ".pack").length()
+            + PackIndex.file(PACK_FOLDER, PACK_NAME, gen, ".idx").length();
+    }
+
+    /** Returns the content ids of the versions of each committed path,
+     *  oldest first, keyed by path. Versions are ordered as their commits
+     *  are in the commit graph, so every version comes after the versions
+     *  in its commit's ancestors. Contents still in the BLOBS folder of an
+     *  older version of Gitlet are left out. */
+    private static LinkedHashMap<String, List<ObjectId>> histories() {
+        for (ObjectId id : Commit.ids()) {
+            CommitGraph.row(id);
+        }
+        LinkedHashMap<String, List<ObjectId>> result = new LinkedHashMap<>();
+        for (int r = 0; r < CommitGraph.size(); r += 1) {
+            HashMap<String, ObjectId> files =
+                Commit.fromFile(CommitGraph.id(r)).getFiles();
+            if (files == null) {
+                continue;
+            }
+            for (Map.Entry<String, ObjectId> f : files.entrySet()) {
+                ObjectId id = f.getValue();
+                if (!ObjectStore.exists(id)) {
+                    continue;
+                }
+                List<ObjectId> history =
+                    result.computeIfAbsent(f.getKey(), p -> new ArrayList<>());
+                if (history.isEmpty()
+                    || !history.get(history.size() - 1).equals(id)) {
+                    history.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns a delta rebuilding TARGET from BASE, or null if BASE is
+     *  null or the delta would not be less than half the size of
+     *  TARGET. */
+    private static byte[] encode(byte[] base, byte[] target) {
+        if (base == null) {
+            return null;
+        }
+        byte[] delta = Delta.encode(base, target);
+        return delta.length < target.length / 2 ? delta : null;
+    }
+
+    /** Returns the contents with content id ID, or null if they are
+     *  larger than DELTA_LIMIT bytes. */
+    private static byte[] readLimited(ObjectId id) throws IOException {
+        try (InputStream in = ObjectStore.open(id)) {
+            byte[] result = in.readNBytes(DELTA_LIMIT + 1);
+            return result.length > DELTA_LIMIT ? null : result;
+        }
+    }
+
+    /** Appends to CH a record holding the whole contents with content id
+     *  ID, which are BYTES if BYTES is not null, and returns its offset. */
+    private static long writeFull(FileChannel ch, ObjectId id,
+                                   byte[] bytes)
+        throws IOException {
+        if (bytes != null) {
+            return writeRecord(ch, null, bytes);
+        }
+        try (InputStream in = ObjectStore.open(id)) {
+            return writeRecord(ch, null, in);
+        }
+    }
+
+    /** Appends to CH a record whose payload is DATA, which is a delta
+     *  against the contents with content id BASE, or whole contents if
+     *  BASE is null. Returns the offset of the record. */
+    private static long writeRecord(FileChannel ch, ObjectId base,
+                                     byte[] data)
+        throws IOException {
+        return writeRecord(ch, base, new ByteArrayInputStream(data));
+    }
+
+    /** Appends to CH a record whose payload is read from IN, which is a
+     *  delta against the contents with content id BASE, or whole contents
+     *  if BASE is null. Returns the offset of the record. */
+    private static long writeRecord(FileChannel ch, ObjectId base,
+                                    InputStream in) throws IOException {
+        long offset = ch.position();
+        ByteBuffer header =
+            ByteBuffer.allocate(1 + Utils.UID_LENGTH + Long.BYTES);
+        if (base == null) {
+            header.put(FULL);
+        } else {
+            header.put(DELTA);
+            header.put(base.toAscii());
+        }
+        header.putLong(0);
+        header.flip();
+        long lengthAt = offset + header.limit() - Long.BYTES;
+        while (header.hasRemaining()) {
+            ch.write(header);
+        }
+        Deflater deflater = new Deflater();
+        try {
+            DeflaterOutputStream out =
+                new DeflaterOutputStream(Channels.newOutputStream(ch),
+                                         deflater, Utils.CHUNK_SIZE);
+            in.transferTo(out);
+            out.finish();
+        } finally {
+            deflater.end();
+        }
+        long end = ch.position();
+        ByteBuffer length = ByteBuffer.allocate(Long.BYTES);
+        length.putLong(end - lengthAt - Long.BYTES).flip();
+        while (length.hasRemaining()) {
+            ch.write(length, lengthAt + length.position());
+        }
+        return offset;
+    }
+
+    /** Returns the inflated payload of the record whose payload length
+     *  starts at offset AT of the pack. Only payloads that fit in an array
+     *  are read this way; larger whole contents are streamed by open. */
+    private static byte[] inflate(long at) {
+        long length = readAt(at, Long.BYTES).getLong();
+        if (length > Integer.MAX_VALUE) {
+            throw Utils.error("Object is too large to read whole.");
+        }
+        Inflater inflater = new Inflater();
+        inflater.setInput(readAt(at + Long.BYTES, (int) length));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[Utils.CHUNK_SIZE];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && inflater.needsInput()) {
+                    throw Utils.error("Blob pack is truncated.");
+                }
+                out.write(chunk, 0, n);
+            }
+        } catch (DataFormatException excp) {
+            throw Utils.error("Blob pack is corrupt.");
+        } finally {
+            inflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the offset of the record for content id ID. */
+    private static long offset(ObjectId id) {
+        ByteBuffer index = index();
+        int k = PackIndex.find(index, id);
+        if (k < 0) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        return PackIndex.offset(index, k);
+    }
+
+    /** Returns a buffer holding the N bytes of the pack starting at offset
+     *  AT. */
+    private static ByteBuffer readAt(long at, int n) {
+        ByteBuffer result = ByteBuffer.allocate(n);
+        try {
+            while (result.hasRemaining()) {
+                if (channel().read(result, at + result.position()) < 0) {
+                    throw Utils.error("Blob pack is truncated.");
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not read the blob pack.");
+        }
+        return result.flip();
+    }
+
+    /** Adds the rebuilt CONTENTS with content id ID to the cache, evicting
+     *  the least recently used contents while the cache is too large. */
+    private static void remember(ObjectId id, byte[] contents) {
+        if (contents.length > CACHE_LIMIT) {
+            return;
+        }
+        cache().put(id, contents);
+        _cachedBytes += contents.length;
+        Iterator<byte[]> lru = _cache.values().iterator();
+        while (_cachedBytes > CACHE_LIMIT) {
+            _cachedBytes -= lru.next().length;
+            lru.remove();
+        }
+    }
+
+    /** Returns the cache of rebuilt contents, in least recently used
+     *  order. */
+    private static LinkedHashMap<ObjectId, byte[]> cache() {
+        if (_cache == null) {
+            _cache = new LinkedHashMap<>(16, 0.75f, true);
+        }
+        return _cache;
+    }
+
+    /** Returns the channel the pack is read through, opening it along
+     *  with the index if necessary. Safe to call from several threads at
+     *  once, as are the positional reads made through it. */
+    private static FileChannel channel() throws IOException {
+        index();
+        FileChannel ch = _channel;
+        if (ch == null) {
+            throw new IOException("no blob pack");
+        }
+        return ch;
+    }
+
+    /** Returns the memory-mapped index, first choosing the current
+     *  generation and opening its pack along with mapping its index if
+     *  that has not been done yet. Both stay open, even once another
+     *  process has replaced them, until refresh() sees the new ones. Safe
+     *  to call from several threads at once. */
+    private static ByteBuffer index() {
+        ByteBuffer index = _index;
+        if (index == null) {
+            synchronized (BlobPack.class) {
+                index = _index;
+                if (index == null) {
+                    int gen = PackIndex.generation(PACK_FOLDER, PACK_NAME);
+                    File pack =
+                        PackIndex.file(PACK_FOLDER, PACK_NAME, gen, ".pack");
+                    index = Utils.map(PackIndex.file(PACK_FOLDER, PACK_NAME,
+                                                     gen, ".idx"));
+                    if (index.capacity() > 0) {
+                        try {
+                            _channel = FileChannel.open(pack.toPath());
+                        } catch (IOException excp) {
+                            throw Utils.error("Could not read the blob "
+                                              + "pack.");
+                        }
+                    }
+                    _generation = gen;
+                    _pack = pack;
+                    _index = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /** Closes the pack and drops the index if another process has replaced
+     *  them with a new generation since they were opened. Cached contents
+     *  are kept, since they are named by their content ids and so can
+     *  never go stale. */
+    static synchronized void refresh() {
+        if (_index != null
+            && PackIndex.generation(PACK_FOLDER, PACK_NAME) != _generation) {
+            invalidate();
+        }
+    }
+
+    /** Closes the pack and drops the index so that the next access sees
+     *  the current generation. */
+    private static synchronized void invalidate() {
+        FileChannel ch = _channel;
+        _channel = null;
+        _index = null;
+        if (ch != null) {
+            try {
+                ch.close();
+            } catch (IOException excp) {
+                throw Utils.error("Could not close the blob pack.");
+            }
+        }
+    }
+
+    /** The generation of the pack in use. Set before _index is. */
+    private static int _generation;
+
+    /** The pack file of the generation in use. Set before _index is. */
+    private static volatile File _pack;
+
+    /** The channel the pack in use is read through, or null if it has not
+     *  been opened or there is no pack. Set before _index is. */
+    private static volatile FileChannel _channel;
+
+    /** The current mapping of the index, or null if the generation in use
+     *  has not yet been chosen. Volatile, like _channel. */
+    private static volatile ByteBuffer _index;
+
+    /** Rebuilt contents mapped by content id, least recently used first. */
+    private static LinkedHashMap<ObjectId, byte[]> _cache;
+
+    /** Total size in bytes of the contents in _cache. */
+    private static long _cachedBytes;
+
+}
@@ -1,11 +1,15 @@
 package gitlet;
 
-import java.io.IOException;
-import java.util.LinkedList;
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 
-/**Represents a series of commits.
+/**Represents a series of commits by a pointer to its most recent commit.
+ * The commits in the branch are those reachable from the head through the
+ * commit graph.
  * @author Divya Sivanandan */
 public class Branch implements Serializable {
 
@@ -16,54 +20,49 @@ public class Branch implements Serializable {
     /**Constructs the initial master branch when a Gitlet version-control
      * system is initialized.*/
     public Branch() {
-        _commits = new LinkedList<>();
-        _commits.add(new Commit().getHash());
         _name = "master";
-        _head = _commits.get(0);
+        _head = new Commit().getHash();
         this.saveBranch();
     }
 
-    /**Creates new BRANCH with name NAME and head pointer set at NODE. Copies
-     * the existing commits from the ACTIVE branch onto itself. */
-    public Branch(String name, Commit node, Branch active) {
-        _commits = new LinkedList<>();
-        LinkedList<String> activeCommits = active.getCommits();
-        for (String id: activeCommits) {
-            _commits.add(id);
-        }
-        _head = node.getHash();
+    /**Creates new BRANCH with name NAME and head pointer set at the commit
+     * with sha1 HEAD. */
+    public Branch(String name, ObjectId head) {
+        _head = head;
         _name = name;
         this.saveBranch();
     }
 
-    /**Reads in, deserializes and returns a BRANCH from a file with name NAME in
+    /** Constructs the branch whose fields are read from IN. */
+    private Branch(Codec.Reader in) {
+        _name = in.string();
+        _head = in.id();
+    }
+
+    /**Reads in, decodes and returns a BRANCH from a file with name NAME in
      * the BRANCH_FOLDER. If a branch with name passed in doesn't exist,
      * a GitException error is thrown. */
     public static Branch fromFile(String name) {
         File b = new File(".gitlet/BRANCHES/" + name);
-        if (!b.exists()) {
-            Utils.message("No such branch exists.");
-            System.exit(0);
+        if (!Transaction.exists(b)) {
+            throw Utils.error("No such branch exists.");
         }
-        return Utils.readObject(b, Branch.class);
+        byte[] data = Transaction.read(b);
+        if (Codec.isSerialized(data)) {
+            return Utils.deserialize(data, Branch.class);
+        }
+        return new Branch(new Codec.Reader(data));
     }
 
     /**Saves a branch to a file in the BRANCH_FOLDER for future use.*/
     public void saveBranch() {
-        try {
-            File b = new File(".gitlet/BRANCHES/" + this._name);
-            if (!b.exists()) {
-                b.createNewFile();
-            }
-            Utils.writeObject(b, this);
-        } catch (IOException exp) {
-            throw new GitletException();
-        }
+        File b = new File(".gitlet/BRANCHES/" + this._name);
+        Transaction.write(b, new Codec.Writer().string(_name)
+                          .id(_head).toByteArray());
     }
 
     /** Adds a commit NODE to branch. */
     public void add(Commit node) {
-        this._commits.add(node.getHash());
         _head = node.getHash();
         this.saveBranch();
     }
@@ -72,8 +71,7 @@ public class Branch implements Serializable {
     /** Deletes a branch with name NAME from the BRANCHES folder
      * in the Gitlet folder. */
     public static void remove(String name) {
-        File b = Utils.join(BRANCH_FOLDER, name);
-        b.delete();
+        Transaction.delete(Utils.join(BRANCH_FOLDER, name));
     }
 
     /** Returns the NAME of the current branch. */
@@ -83,37 +81,50 @@ public class Branch implements Serializable {
 
     /**Returns the sha1 hash of most recent commit in the branch.
      * This is the HEAD commit. */
-    public String getHead() {
+    public ObjectId getHead() {
         return _head;
     }
 
     /** Sets the head pointer to commit with ID given. */
-    public void setHead(String id) {
+    public void setHead(ObjectId id) {
         _head = id;
         this.saveBranch();
     }
 
-    /** Takes in a COMMID and checks if branch contains the commit with COMMID.
-     * Returns true if the branch contains the commit. */
-    public boolean containsCommit(String commID) {
-        return this._commits.contains(commID);
+    /** Reads the fields of a branch serialized by an earlier version of
+     * Gitlet from IN, in the form described by serialPersistentFields. */
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        _name = (String) fields.get("_name", null);
+        _head = ObjectId.fromHex((String) fields.get("_head", null));
     }
 
-    /** Returns all the commits saved in this branch. */
-    public LinkedList<String> getCommits() {
-        return this._commits;
+    /** Writes this branch to OUT in the form that readObject reads. */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("_name", _name);
+        fields.put("_head", _head.toHex());
+        out.writeFields();
     }
 
 
     /** Returns the sha1 id of the head commit which is the most
      * recent commit in the branch. */
-    private String _head;
-
-    /**A linked-list of the sha1 hash values of commits that represents
-     * a single branch in the GitTree.*/
-    private LinkedList<String> _commits;
+    private ObjectId _head;
 
     /**Branch name.*/
     private String _name;
 
+    /** Fixed so that branches written by earlier versions of Gitlet, which
+     * also stored a list of their commits, can still be read. */
+    private static final long serialVersionUID = -8766895837762377793L;
+
+    /** The fields of the Java serialization of a branch, as earlier
+     * versions of Gitlet wrote it, with the head held as a String. */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("_head", String.class),
+        new ObjectStreamField("_name", String.class),
+    };
+
 }
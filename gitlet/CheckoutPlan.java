@@ -0,0 +1,52 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The changes that make the working directory hold exactly the files of
+ * a commit. The plan is worked out once from the commit's file map and
+ * the working directory, and holds only the files that need to be written
+ * (missing or different) and those that need to be deleted (not in the
+ * commit). Files that already match are left alone, so their modification
+ * times do not change.
+ * @author Divya Sivanandan */
+class CheckoutPlan {
+
+    /** A plan for making the working directory hold exactly the files in
+     *  TARGET, which maps file names to the contents they refer to. Uses
+     *  STATS to tell which files already match without reading them. */
+    CheckoutPlan(Map<String, ObjectId> target, StatCache stats) {
+        for (Map.Entry<String, ObjectId> e : target.entrySet()) {
+            File f = Utils.join(Command.CWD, e.getKey());
+            if (!e.getValue().equals(stats.hash(f))) {
+                _writes.put(e.getKey(), e.getValue());
+            }
+        }
+        for (String f : Utils.plainFilenamesIn(Command.CWD)) {
+            if (!target.containsKey(f)) {
+                _deletes.add(f);
+            }
+        }
+    }
+
+    /** Carries out the plan. Files are written in parallel. */
+    void apply() {
+        _writes.entrySet().parallelStream()
+            .forEach(e -> ObjectStore.copyTo(e.getValue(),
+                                             Utils.join(Command.CWD,
+                                                        e.getKey())));
+        for (String f : _deletes) {
+            Utils.restrictedDelete(Utils.join(Command.CWD, f));
+        }
+    }
+
+    /** Files to write, mapped to the contents they refer to. */
+    private TreeMap<String, ObjectId> _writes = new TreeMap<>();
+
+    /** Files to delete. */
+    private List<String> _deletes = new ArrayList<>();
+
+}
@@ -0,0 +1,66 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/** A thin front end for Gitlet that hands each command to the Daemon
+ * serving the current directory, so that the command runs in an already
+ * warm JVM. When no daemon is running, the command is run here by Main
+ * instead, so the output is the same either way.
+ * @author Divya Sivanandan */
+public class Client {
+
+    /** The socket the daemon for the current directory listens on. */
+    static final File SOCKET_FILE = new File(".gitlet/daemon.sock");
+
+    /** Usage: java gitlet.Client ARGS, where ARGS are as for Main. */
+    public static void main(String... args) throws IOException {
+        int status = forward(args);
+        if (status < 0) {
+            Main.main(args);
+        }
+        System.exit(status);
+    }
+
+    /** Sends ARGS to the daemon serving the current directory and copies
+     *  the output of the command to System.out and System.err. Returns
+     *  the exit status of the command, or -1 if no daemon is running. */
+    static int forward(String... args) throws IOException {
+        SocketChannel ch;
+        try {
+            ch = SocketChannel.open(StandardProtocolFamily.UNIX);
+            ch.connect(UnixDomainSocketAddress.of(SOCKET_FILE.toPath()));
+        } catch (IOException excp) {
+            return -1;
+        }
+        try (ch) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(ch)));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            DataInputStream in =
+                new DataInputStream(Channels.newInputStream(ch));
+            int status = in.readInt();
+            byte[] stdout = new byte[in.readInt()];
+            in.readFully(stdout);
+            byte[] stderr = new byte[in.readInt()];
+            in.readFully(stderr);
+            System.out.write(stdout);
+            System.out.flush();
+            System.err.write(stderr);
+            System.err.flush();
+            return status;
+        }
+    }
+
+}
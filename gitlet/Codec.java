@@ -0,0 +1,290 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/** The compact binary format that Commits, FileTrees, Branches, the GitTree
+ * and the StatCache are saved in. An encoding starts with a format version
+ * byte, followed by the fields of the object in a fixed order. Numbers are
+ * written as variable-length integers, seven bits to a byte, low bits
+ * first. A string is its UTF-8 length plus two followed by its bytes,
+ * except that a string that is a sha1 is a one followed by the sha1's 20
+ * raw bytes. A list of strings is its size plus one followed by its
+ * elements, and a map is its size plus one followed by each key, in sorted
+ * order, and its value; a zero length or size stands for null. Equal
+ * objects therefore always have equal encodings, so a Commit's sha1 can be
+ * taken over its encoding. Since a commit is mostly sha1s, writing them as
+ * raw bytes makes it about half the size. Fields that hold ObjectIds are
+ * encoded exactly as strings holding the same sha1s would be.
+ *
+ * Objects written by earlier versions of Gitlet are Java serialization
+ * streams, which start with a byte that is never a format version.
+ * @author Divya Sivanandan */
+class Codec {
+
+    /** The format version. */
+    static final byte VERSION = 1;
+
+    /** Returns true if DATA is a Java serialization stream rather than an
+     *  encoding in this format. */
+    static boolean isSerialized(byte[] data) {
+        return data.length >= 2 && data[0] == (byte) 0xac
+            && data[1] == (byte) 0xed;
+    }
+
+    /** Builds the encoding of an object one field at a time. */
+    static class Writer {
+
+        /** A writer whose encoding so far holds just the format version. */
+        Writer() {
+            _buf[_size++] = VERSION;
+        }
+
+        /** Appends the string S, which may be null. Returns this writer. */
+        Writer string(String s) {
+            reserve(1 + ObjectId.SIZE);
+            if (s == null) {
+                writeInt(0);
+            } else if (ObjectId.parseHex(s, _buf, _size + 1)) {
+                _buf[_size] = 1;
+                _size += 1 + ObjectId.SIZE;
+            } else {
+                byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                writeInt(b.length + 2);
+                reserve(b.length);
+                System.arraycopy(b, 0, _buf, _size, b.length);
+                _size += b.length;
+            }
+            return this;
+        }
+
+        /** Appends the sha1 ID, which may be null. Returns this writer. */
+        Writer id(ObjectId id) {
+            reserve(1 + ObjectId.SIZE);
+            if (id == null) {
+                writeInt(0);
+            } else {
+                _buf[_size] = 1;
+                id.copyTo(_buf, _size + 1);
+                _size += 1 + ObjectId.SIZE;
+            }
+            return this;
+        }
+
+        /** Appends the sha1s in L, which may be null, in iteration order.
+         *  Returns this writer. */
+        Writer ids(Collection<ObjectId> l) {
+            if (l == null) {
+                writeInt(0);
+            } else {
+                writeInt(l.size() + 1);
+                for (ObjectId id : l) {
+                    id(id);
+                }
+            }
+            return this;
+        }
+
+        /** Appends the strings in L, which may be null, in iteration
+         *  order. Returns this writer. */
+        Writer strings(Collection<String> l) {
+            if (l == null) {
+                writeInt(0);
+            } else {
+                writeInt(l.size() + 1);
+                for (String s : l) {
+                    string(s);
+                }
+            }
+            return this;
+        }
+
+        /** Appends the map M from names to sha1s, which may be null, in
+         *  key order. Returns this writer. */
+        Writer refs(Map<String, ObjectId> m) {
+            if (m == null) {
+                writeInt(0);
+            } else {
+                writeInt(m.size() + 1);
+                String[] keys = m.keySet().toArray(new String[0]);
+                Arrays.sort(keys);
+                for (String key : keys) {
+                    string(key);
+                    id(m.get(key));
+                }
+            }
+            return this;
+        }
+
+        /** Appends the number N as a variable-length integer. Returns this
+         *  writer. */
+        Writer number(long n) {
+            reserve(10);
+            while ((n & ~0x7fL) != 0) {
+                _buf[_size++] = (byte) ((n & 0x7f) | 0x80);
+                n >>>= 7;
+            }
+            _buf[_size++] = (byte) n;
+            return this;
+        }
+
+        /** Returns the encoding written so far. */
+        byte[] toByteArray() {
+            return Arrays.copyOf(_buf, _size);
+        }
+
+        /** Appends the non-negative VALUE as a variable-length integer. */
+        private void writeInt(int value) {
+            reserve(5);
+            while (value >= 0x80) {
+                _buf[_size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            _buf[_size++] = (byte) value;
+        }
+
+        /** Makes room for at least N more bytes in _buf. */
+        private void reserve(int n) {
+            if (_size + n > _buf.length) {
+                _buf = Arrays.copyOf(_buf, Math.max(2 * _buf.length,
+                                                    _size + n));
+            }
+        }
+
+        /** Holds the encoding written so far in its first _size bytes. */
+        private byte[] _buf = new byte[256];
+
+        /** Number of bytes of _buf in use. */
+        private int _size;
+    }
+
+    /** Reads the fields of an encoded object back in the order they were
+     *  written. */
+    static class Reader {
+
+        /** A reader of the encoding DATA, positioned at its first field. */
+        Reader(byte[] data) {
+            _in = ByteBuffer.wrap(data);
+            _version = _in.get();
+            if (_version != VERSION) {
+                throw Utils.error("Unknown format version %d.", _version);
+            }
+        }
+
+        /** Returns the format version of the encoding. */
+        byte version() {
+            return _version;
+        }
+
+        /** Returns the next string, which may be null. */
+        String string() {
+            int n = readInt();
+            if (n == 0) {
+                return null;
+            } else if (n == 1) {
+                return raw().toHex();
+            }
+            return text(n);
+        }
+
+        /** Returns the next sha1, which may be null. */
+        ObjectId id() {
+            return readInt() == 0 ? null : raw();
+        }
+
+        /** Returns the next list of sha1s, which may be null. */
+        ArrayList<ObjectId> ids() {
+            int n = readInt();
+            if (n == 0) {
+                return null;
+            }
+            ArrayList<ObjectId> result = new ArrayList<>(n - 1);
+            for (int i = 1; i < n; i += 1) {
+                result.add(id());
+            }
+            return result;
+        }
+
+        /** Returns the next list of strings, which may be null. */
+        ArrayList<String> strings() {
+            int n = readInt();
+            if (n == 0) {
+                return null;
+            }
+            ArrayList<String> result = new ArrayList<>(n - 1);
+            for (int i = 1; i < n; i += 1) {
+                result.add(string());
+            }
+            return result;
+        }
+
+        /** Returns the next map from names to sha1s, which may be
+         *  null. */
+        HashMap<String, ObjectId> refs() {
+            int n = readInt();
+            if (n == 0) {
+                return null;
+            }
+            HashMap<String, ObjectId> result = new HashMap<>();
+            for (int i = 1; i < n; i += 1) {
+                String name = string();
+                result.put(name, id());
+            }
+            return result;
+        }
+
+        /** Returns the next number. */
+        long number() {
+            long result = 0;
+            for (int shift = 0;; shift += 7) {
+                int b = _in.get();
+                result |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+        }
+
+        /** Returns the sha1 written as raw bytes at the current position,
+         *  and moves past it. */
+        private ObjectId raw() {
+            ObjectId id = ObjectId.of(_in.array(), _in.position());
+            _in.position(_in.position() + ObjectId.SIZE);
+            return id;
+        }
+
+        /** Returns the string whose encoding starts with N, which has just
+         *  been read, and moves past it. */
+        private String text(int n) {
+            int len = n - 2;
+            String s = new String(_in.array(), _in.position(), len,
+                                  StandardCharsets.UTF_8);
+            _in.position(_in.position() + len);
+            return s;
+        }
+
+        /** Returns the next variable-length integer. */
+        private int readInt() {
+            int result = 0;
+            for (int shift = 0;; shift += 7) {
+                int b = _in.get();
+                result |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+        }
+
+        /** The encoding being read. */
+        private final ByteBuffer _in;
+
+        /** The format version of the encoding. */
+        private final byte _version;
+    }
+
+}
@@ -0,0 +1,145 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Codec format, and of reading Commits written in it.
+ *  @author Divya Sivanandan
+ */
+public class CodecTest {
+
+    /** Every kind of field reads back as it was written, nulls included. */
+    @Test
+    public void roundTrip() {
+        Map<String, ObjectId> refs = new TreeMap<>();
+        refs.put("g.txt", B);
+        refs.put("f.txt", A);
+        byte[] data = new Codec.Writer().string("h\u00e9llo").string(null)
+            .string(A.toHex()).id(B).id(null).ids(List.of(A, B)).ids(null)
+            .strings(List.of("x", "")).strings(null).refs(refs).refs(null)
+            .number(0).number(300).number(Long.MAX_VALUE).toByteArray();
+        assertEquals(Codec.VERSION, data[0]);
+        Codec.Reader in = new Codec.Reader(data);
+        assertEquals(Codec.VERSION, in.version());
+        assertEquals("h\u00e9llo", in.string());
+        assertNull(in.string());
+        assertEquals(A.toHex(), in.string());
+        assertEquals(B, in.id());
+        assertNull(in.id());
+        assertEquals(List.of(A, B), in.ids());
+        assertNull(in.ids());
+        assertEquals(List.of("x", ""), in.strings());
+        assertNull(in.strings());
+        assertEquals(refs, in.refs());
+        assertNull(in.refs());
+        assertEquals(0, in.number());
+        assertEquals(300, in.number());
+        assertEquals(Long.MAX_VALUE, in.number());
+    }
+
+    /** A string holding a sha1 is written as the raw sha1, exactly as the
+     *  ObjectId is, and the encoding does not depend on the order in
+     *  which a map was filled. */
+    @Test
+    public void canonical() {
+        assertArrayEquals(new Codec.Writer().id(A).toByteArray(),
+                          new Codec.Writer().string(A.toHex()).toByteArray());
+        assertEquals(2 + ObjectId.SIZE,
+                     new Codec.Writer().id(A).toByteArray().length);
+        Map<String, ObjectId> m1 = new TreeMap<>(), m2 = new TreeMap<>(
+            (x, y) -> y.compareTo(x));
+        m1.put("a", A);
+        m1.put("b", B);
+        m2.putAll(m1);
+        assertArrayEquals(new Codec.Writer().refs(m1).toByteArray(),
+                          new Codec.Writer().refs(m2).toByteArray());
+    }
+
+    /** A commit, which holds the id of its FileTree, reads back with all
+     *  its fields and encodes to the same bytes again. */
+    @Test
+    public void commit() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(Codec.VERSION);
+        text(out, "Added f");
+        text(out, STAMP);
+        out.write(2);
+        raw(out, A);
+        raw(out, B);
+        byte[] data = out.toByteArray();
+        Commit c = Commit.decode(C, data);
+        assertCommit(c, new ObjectId[] {A});
+        assertEquals(B, c.getTree());
+        assertArrayEquals(data, c.encode());
+    }
+
+    /** A commit with no parents and no files, like the initial commit,
+     *  encodes its absent fields as nulls. */
+    @Test
+    public void commitNulls() {
+        byte[] data = new Codec.Writer().string("initial commit")
+            .string(STAMP).ids(null).id(null).toByteArray();
+        Commit c = Commit.decode(C, data);
+        assertNull(c.getParent());
+        assertNull(c.getTree());
+        assertNull(c.getFiles());
+        assertArrayEquals(data, c.encode());
+    }
+
+    /** Java serialization streams are told apart from encodings, and an
+     *  unknown version is refused. */
+    @Test
+    public void versions() {
+        assertTrue(Codec.isSerialized(Utils.serialize("x")));
+        assertFalse(Codec.isSerialized(new Codec.Writer().toByteArray()));
+        for (byte v : new byte[] {0, Codec.VERSION + 1}) {
+            try {
+                new Codec.Reader(new byte[] {v});
+                fail("read version " + v);
+            } catch (GitletException excp) {
+                assertEquals("Unknown format version " + v + ".",
+                             excp.getMessage());
+            }
+        }
+    }
+
+    /** Checks that C has sha1 C, the message "Added f", the time STAMP and
+     *  the parents PARENTS. */
+    private static void assertCommit(Commit c, ObjectId[] parents) {
+        assertEquals(C, c.getHash());
+        assertEquals("Added f", c.getMessage());
+        assertEquals(STAMP, c.getTimestamp());
+        assertArrayEquals(parents, c.getParent());
+    }
+
+    /** Writes S to OUT as strings that are not sha1s are written. */
+    private static void text(ByteArrayOutputStream out, String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.write(b.length + 2);
+        out.writeBytes(b);
+    }
+
+    /** Writes ID to OUT as sha1s are written. */
+    private static void raw(ByteArrayOutputStream out, ObjectId id) {
+        byte[] b = new byte[ObjectId.SIZE];
+        id.copyTo(b, 0);
+        out.write(1);
+        out.writeBytes(b);
+    }
+
+    /** Sha1s used as commit, tree and content ids. */
+    private static final ObjectId
+        A = ObjectId.fromHex(Utils.sha1("a")),
+        B = ObjectId.fromHex(Utils.sha1("b")),
+        C = ObjectId.fromHex(Utils.sha1("c"));
+
+    /** A commit time. */
+    private static final String STAMP = "Thu Nov 9 20:00:05 2017 -0800";
+
+}
@@ -1,12 +1,24 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
 
 /** Command class execute commands passed in the main method. All the
  * logic for each command is included in static methods with relevant names.
@@ -21,37 +33,35 @@ public class Command implements Serializable {
     /**The .gitlet FOLDER where all data in the repository is tracked.*/
     static final File GITLET_FOLDER = new File(".gitlet");
 
-    /** A folder that acts as the staging area. */
+    /** The folder that earlier versions of Gitlet used as the staging
+     * area. The staging area is now the StagingIndex. */
     static final File STAGING_AREA = new File(".gitlet/STAGED");
 
-    /** A folder that contains snapshots of file contents.*/
+    /** A folder that contains snapshots of file contents written by
+     * earlier versions of Gitlet. New contents go to the ObjectStore.*/
     static final File BLOBS_FOLDER = new File(".gitlet/BLOBS");
 
+    /** Number of commits global-log decodes at a time. */
+    static final int CHUNK = 4096;
 
-    /** Constructs a command and assigns values to instance variable depending
-     * on whether or not a Gitlet version control system has been initialized.
-     * Takes a String array INPUT from Main and does necessary error handling.*/
+    /** Size of the buffer that global-log and diff write through. */
+    static final int OUTPUT_BUFFER = 1 << 16;
+
+    /** The contents of an absent file, for diff. */
+    private static final byte[] EMPTY = new byte[0];
+
+
+    /** Constructs a command from the String array INPUT from Main and does
+     * necessary error handling. Repository state is not read here; the
+     * command's session reads each part of it the first time it is used.*/
     public Command(String[] input) {
         if (input.length == 0) {
-            Utils.message("Please enter a command");
-            System.exit(0);
+            throw Utils.error("Please enter a command");
         }
         _cmd = input[0];
         _rest = Arrays.copyOfRange(input, 1, input.length);
-        if (Main.initialized()) {
-            _tree = GitTree.fromFile();
-            File[] stagedFiles = STAGING_AREA.listFiles();
-            for (File f : stagedFiles) {
-                _staged.put(f.getName(), Utils.readContentsAsString(f));
-            }
-            setTracked();
-            setUntracked();
-            _activeBranch = getActiveBranch();
-        } else {
-            if (!_cmd.equals("init")) {
-                Utils.message("Not in an initialized Gitlet directory.");
-                System.exit(0);
-            }
+        if (!Main.initialized() && !_cmd.equals("init")) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
         }
     }
 
@@ -63,75 +73,67 @@ public class Command implements Serializable {
      * commits in all repositories will trace back to it. */
     public void init() {
         if (GITLET_FOLDER.exists()) {
-            Utils.message("A Gitlet version-control system "
+            throw Utils.error("A Gitlet version-control system "
                     + "already exists in the current directory.");
-            System.exit(0);
         } else {
             GITLET_FOLDER.mkdir();
             Commit.COMMIT_FOLDER.mkdir();
+            CommitPack.PACK_FOLDER.mkdir();
             Branch.BRANCH_FOLDER.mkdir();
-            BLOBS_FOLDER.mkdir();
-            STAGING_AREA.mkdir();
+            ObjectStore.OBJECTS_FOLDER.mkdir();
             Utils.join(GITLET_FOLDER, "COMMITS");
             Utils.join(GITLET_FOLDER, "BRANCHES");
-            Utils.join(GITLET_FOLDER, "STAGED");
             Utils.join(GITLET_FOLDER, "BLOBS");
-            _tree = new GitTree();
+            _session.setTree(new GitTree());
             Utils.join(GITLET_FOLDER, "tracked");
             File activeBranch = Utils.join(GITLET_FOLDER, "active");
-            Utils.writeContents(activeBranch, "master");
-            _activeBranch = getActiveBranch();
+            Transaction.write(activeBranch,
+                              "master".getBytes(StandardCharsets.UTF_8));
         }
     }
 
     /** Adds a copy of the file with name FNAME as it is currently exists in
      *  the working directory to the staging area. Overwrites existing
-     *  file in staging area if it already exists there. */
+     *  file in staging area if it already exists there. The contents of
+     *  the files are stored in parallel, each being read just once to hash
+     *  and store it; what to stage is then decided in argument order
+     *  exactly as if the files had been added one at a time, and the
+     *  staging area is updated in one pass. */
     public void add(String[] fName) throws IOException {
-        for (String filename : fName) {
-            File f = new File("./" + filename);
-            if (!f.exists()) {
-                Utils.message("File does not exist.");
-                System.exit(0);
+        int n = 0;
+        while (n < fName.length && new File("./" + fName[n]).exists()) {
+            n += 1;
+        }
+        ObjectId[] ids = IntStream.range(0, n).parallel()
+            .mapToObj(i -> ObjectStore.put(new File("./" + fName[i])))
+            .toArray(ObjectId[]::new);
+        LinkedHashMap<String, ObjectId> updates = new LinkedHashMap<>();
+        boolean stopped = false;
+        for (int i = 0; i < n && !stopped; i += 1) {
+            String filename = fName[i];
+            ObjectId fsha1 = ids[i];
+            if (removed().contains(filename)) {
+                index().unremove(filename);
+                index().unadd(filename);
+                stopped = true;
+            } else if (tracked().contains(filename)
+                       && fsha1.equals(_session.headFiles().get(filename))) {
+                updates.put(filename, null);
+                stopped = true;
             } else {
-                String contents = Utils.readContentsAsString(f);
-                String fsha1 = Utils.sha1(contents);
-                if (_staged.containsKey(filename)) {
-                    _staged.replace(filename, fsha1);
-                } else {
-                    _staged.put(filename, fsha1);
-                }
-                if (_untracked.contains(filename)) {
-                    _untracked.remove(filename);
-                }
-                if (_tree.getRemoved().contains(filename)) {
-                    _tree.getRemoved().remove(filename);
-                    _tree.saveTree();
-                    _staged.remove(filename);
-                    return;
-                }
-                String blobName = fsha1.substring(0, 5) + filename;
-                File blobFile = new File(".gitlet/BLOBS/" + blobName);
-                String hcID = getActiveBranch().getHead();
-                Commit hc = Commit.fromFile(hcID);
-                HashMap<String, String> files = hc.getFiles();
-                if (blobFile.exists()) {
-                    if (_tracked.contains(filename)) {
-                        if (files.get(filename).equals(blobName)) {
-                            _staged.remove(filename);
-                            return;
-                        }
-                    }
-                    File stagingFile = Utils.join(STAGING_AREA, filename);
-                    Utils.writeContents(stagingFile, blobName);
-                } else {
-                    blobFile.createNewFile();
-                    Utils.writeContents(blobFile, contents);
-                    File stagingFile = Utils.join(STAGING_AREA, filename);
-                    Utils.writeContents(stagingFile, blobName);
-                }
+                updates.put(filename, fsha1);
             }
         }
+        for (Map.Entry<String, ObjectId> u : updates.entrySet()) {
+            if (u.getValue() == null) {
+                index().unadd(u.getKey());
+            } else {
+                index().add(u.getKey(), u.getValue());
+            }
+        }
+        if (n < fName.length && !stopped) {
+            throw Utils.error("File does not exist.");
+        }
     }
 
     /** Saves a snapshot of tracked files in the current commit and staging
@@ -140,73 +142,42 @@ public class Command implements Serializable {
      * It will only update the contents of files it is tracking that have
      * been staged. A commit will save and start tracking files that were
      * staged for addition but weren't tracked by its parent. Files may
-     * be untracked as a result of being staged for removal.
+     * be untracked as a result of being staged for removal. Only the parts
+     * of the parent's FileTree that the changes fall in are rewritten.
      */
     public void commit(String msg) {
         if (msg.equals("")) {
             Utils.message("Please enter a commit message.");
         } else {
             Branch active = getActiveBranch();
-            String headCommit = active.getHead();
-            String[] parent = new String[]{headCommit};
-            File pInBranch = Utils.join(Commit.COMMIT_FOLDER, headCommit);
-            Commit directParent = Utils.readObject(pInBranch, Commit.class);
-            HashMap<String, String> parentFiles = directParent.getFiles();
-            ArrayList<String> rm = _tree.getRemoved();
-            if ((parentFiles != null && parentFiles.equals(_staged))
-                    || (_staged.size() == 0
-                    && _tree.getRemoved().size() == 0)) {
-                Utils.message("No changes added to the commit.");
-                System.exit(0);
-            } else {
-                HashMap<String, String> files = new HashMap<>();
-                if (parentFiles != null) {
-                    for (String filename : parentFiles.keySet()) {
-                        files.put(filename, parentFiles.get(filename));
-                        if (!rm.isEmpty() && rm.contains(filename)) {
-                            files.remove(filename);
-                        }
-                    }
-                }
-                for (String filename : _staged.keySet()) {
-                    files.put(filename, _staged.get(filename));
-                }
-                Commit newCommit = new Commit(msg, files, parent);
-                _tree.addToBranch(active.getName(), newCommit);
-                _tree.clearRemoved();
-                for (File f : STAGING_AREA.listFiles()) {
-                    f.delete();
-                }
+            ObjectId headCommit = active.getHead();
+            ObjectId[] parent = new ObjectId[]{headCommit};
+            if (index().isEmpty()) {
+                throw Utils.error("No changes added to the commit.");
+            }
+            ObjectId parentTree = FileTree.of(Commit.fromFile(headCommit));
+            ObjectId files = FileTree.update(parentTree, staged(), removed());
+            if (files.equals(parentTree)) {
+                throw Utils.error("No changes added to the commit.");
             }
+            Commit newCommit = new Commit(msg, files, parent);
+            tree().addToBranch(active.getName(), newCommit);
+            index().clear();
         }
     }
 
 
     /** A commit when merge is called. Creates a new Commit object
      * that has messages MSG given and parents PARENTS. */
-    public void mergeCommit(String msg, String[] parents) {
+    public void mergeCommit(String msg, ObjectId[] parents) {
         Branch active = getActiveBranch();
         Commit hc = Commit.fromFile(active.getHead());
-        HashMap<String, String> files = hc.getFiles();
-        if (files == null) {
-            files = new HashMap<>();
-        }
-        for (String filename: _staged.keySet()) {
-            String blobName = _staged.get(filename);
-            if (blobName.length() == Utils.UID_LENGTH) {
-                blobName = _staged.get(filename).substring(0, 5) + filename;
-            }
-            files.put(filename, blobName);
-        }
-        for (String filename: _tree.getRemoved()) {
-            files.remove(filename);
-        }
+        HashMap<String, ObjectId> added = new HashMap<>(staged());
+        added.keySet().removeAll(removed());
+        ObjectId files = FileTree.update(FileTree.of(hc), added, removed());
         Commit newComm = new Commit(msg, files, parents);
-        _tree.addToBranch(getActiveBranch().getName(), newComm);
-        _tree.clearRemoved();
-        for (File f: STAGING_AREA.listFiles()) {
-            f.delete();
-        }
+        tree().addToBranch(getActiveBranch().getName(), newComm);
+        index().clear();
     }
 
 
@@ -217,11 +188,11 @@ public class Command implements Serializable {
         } else if (_rest.length == 3 && _rest[1].equals("--")) {
             checkoutCommit(_rest[0], _rest[2]);
         } else if (_rest.length == 1) {
-            if (!_tree.getBranches().contains(_rest[0])) {
+            if (!tree().getBranches().contains(_rest[0])) {
                 Utils.message("No such branch exists.");
             } else if (getActiveBranch().getName().equals(_rest[0])) {
                 Utils.message("No need to checkout the current branch.");
-            } else if (!_untracked.isEmpty()) {
+            } else if (!untracked().isEmpty()) {
                 Utils.message("There is an untracked file in the way;"
                         + " delete it, or add and commit it first.");
             } else {
@@ -237,8 +208,8 @@ public class Command implements Serializable {
      * overwriting the version of the file that's already there if
      * there is one. The new version of the file is not staged. */
     public void checkoutFile(String fileName) {
-        String headCommitID = _activeBranch.getHead();
-        checkoutCommit(headCommitID, fileName);
+        Commit head = Commit.fromFile(getActiveBranch().getHead());
+        checkoutCommit(head, fileName);
     }
 
     /** Takes all the files in the head commit of branch with BRANCHNAME and
@@ -249,30 +220,22 @@ public class Command implements Serializable {
      * is the current branch. */
     public void checkoutBranch(String branchName) {
         Branch b = Branch.fromFile(branchName);
-        Commit headCommit = Commit.fromFile(b.getHead());
-        String hcID = headCommit.getHash();
-        HashMap<String, String> files = headCommit.getFiles();
-        _tracked.clear();
-        List<String> filesINCWD = Utils.plainFilenamesIn(CWD);
-        if (files == null) {
-            for (String f: filesINCWD) {
-                Utils.restrictedDelete(f);
-            }
-        } else {
-            for (String filename: files.keySet()) {
-                checkoutCommit(hcID, filename);
-                _tracked.add(filename);
-            }
-            for (String f: filesINCWD) {
-                if (!_tracked.contains(f)) {
-                    Utils.restrictedDelete(f);
-                }
-            }
-        }
+        checkoutFiles(Commit.fromFile(b.getHead()).getFiles());
         setActiveBranch(branchName);
-        for (File f: STAGING_AREA.listFiles()) {
-            f.delete();
-        }
+        _session.resetTracked();
+        index().clear();
+    }
+
+    /** Makes the working directory hold exactly the files in FILES, which
+     * maps file names to the contents they refer to and may be null. Only
+     * the files that are missing or differ are written, and files not in
+     * FILES are deleted. */
+    private void checkoutFiles(HashMap<String, ObjectId> files) {
+        StatCache stats = StatCache.fromFile();
+        CheckoutPlan plan =
+            new CheckoutPlan(files == null ? new HashMap<>() : files, stats);
+        plan.apply();
+        stats.save();
     }
 
     /** Takes the version of the file with FILENAME in the Commit with COMMITID,
@@ -280,17 +243,18 @@ public class Command implements Serializable {
      * overwriting the version of the file that's already there if there is
      * one. The new version of the file is not staged. */
     public void checkoutCommit(String commitID, String fileName) {
-        Commit commit = Commit.fromFile(commitID);
-        HashMap<String, String> files = commit.getFiles();
+        checkoutCommit(Commit.fromFile(commitID), fileName);
+    }
+
+    /** Takes the version of the file with FILENAME in COMMIT and puts it in
+     * the working directory, as checkoutCommit(String, String) does. */
+    private void checkoutCommit(Commit commit, String fileName) {
+        HashMap<String, ObjectId> files = commit.getFiles();
         if (!files.containsKey(fileName)) {
             Utils.message("File does not exist in that commit.");
         } else {
-            String fileSHA = files.get(fileName);
-            String blobName = fileSHA.substring(0, 5) + fileName;
-            File blob = Utils.join(BLOBS_FOLDER, blobName);
-            String fileContents = Utils.readContentsAsString(blob);
             File inCWD = Utils.join(CWD, fileName);
-            Utils.writeContents(inCWD, fileContents);
+            ObjectStore.copyTo(files.get(fileName), inCWD);
         }
     }
 
@@ -300,32 +264,17 @@ public class Command implements Serializable {
     public void reset() {
         if (size() != 1) {
             Utils.message("Incorrect operands.");
-        } else if (!_untracked.isEmpty()) {
+        } else if (!untracked().isEmpty()) {
             Utils.message("There is an untracked file in the way; "
                     + "delete it, or add and commit it first.");
         } else {
             String commitID = _rest[0];
             Commit c = Commit.fromFile(commitID);
-            HashMap<String, String> files = c.getFiles();
-            for (String f: files.keySet()) {
-                checkoutCommit(commitID, f);
-            }
-            getActiveBranch().setHead(commitID);
-            _tree.setLatestCommit(commitID);
-            setTracked();
-            List<String> filesCWD = Utils.plainFilenamesIn(CWD);
-            for (String fName: filesCWD) {
-                if (_tracked == null || !_tracked.contains(fName)) {
-                    File f = Utils.join(CWD, fName);
-                    Utils.restrictedDelete(f);
-                }
-            }
-            _tree.clearRemoved();
-            List<String> stagedFiles = Utils.plainFilenamesIn(STAGING_AREA);
-            for (String s: stagedFiles) {
-                File f = Utils.join(STAGING_AREA, s);
-                f.delete();
-            }
+            checkoutFiles(c.getFiles());
+            getActiveBranch().setHead(c.getHash());
+            tree().setLatestCommit(c.getHash());
+            _session.resetTracked();
+            index().clear();
         }
     }
 
@@ -337,19 +286,19 @@ public class Command implements Serializable {
         System.out.println("=== Branches ===");
         String activeName = getActiveBranch().getName();
         System.out.println("*" + activeName);
-        for (String bName: _tree.getBranches()) {
+        for (String bName: tree().getBranches()) {
             if (!bName.equals(activeName)) {
                 System.out.println(bName);
             }
         }
         System.out.println();
         System.out.println("=== Staged Files ===");
-        for (String fName: _staged.keySet()) {
+        for (String fName: staged().keySet()) {
             System.out.println(fName);
         }
         System.out.println();
         System.out.println("=== Removed Files ===");
-        for (String fName: _tree.getRemoved()) {
+        for (String fName: removed()) {
             System.out.println(fName);
         }
         System.out.println();
@@ -360,7 +309,7 @@ public class Command implements Serializable {
         }
         System.out.println();
         System.out.println("=== Untracked Files ===");
-        for (String fName: _untracked) {
+        for (String fName: untracked()) {
             System.out.println(fName);
         }
         System.out.println();
@@ -372,46 +321,90 @@ public class Command implements Serializable {
      * in merge commits.*/
     public void log() {
         Branch b = getActiveBranch();
-        String commitID = b.getHead();
-        Commit curr = Commit.fromFile(commitID);
-        String parentID = curr.getParent()[0];
-        while (parentID != null) {
-            curr.printCommit();
-            if (curr.getParent() == null) {
-                break;
-            }
-            parentID = curr.getParent()[0];
-            if (parentID != null) {
-                curr = Commit.fromFile(parentID);
-            }
+        int r = CommitGraph.row(b.getHead());
+        while (r != CommitGraph.NONE) {
+            Commit.fromFile(CommitGraph.id(r)).printCommit();
+            r = CommitGraph.parent(r);
         }
     }
 
     /** Prints out information regarding all commits ever made in no
-     * particular order. */
+     * particular order, or newest first with the operand --sort=date.
+     * Commits are decoded in parallel, CHUNK at a time so that memory use
+     * does not grow with the history, and are printed in order through a
+     * single buffered writer. The commit pack is mapped by reading the
+     * first commit before the worker threads start. */
     public void globalLog() {
-        if (size() > 0) {
+        boolean byDate = size() == 1 && _rest[0].equals("--sort=date");
+        if (size() > 0 && !byDate) {
             Utils.message("Incorrect operands.");
         } else {
-            List<String> files = Utils.plainFilenamesIn(Commit.COMMIT_FOLDER);
-            for (String fName : files) {
-                Commit curr = Commit.fromFile(fName);
-                curr.printCommit();
+            List<ObjectId> ids = Commit.ids();
+            if (byDate) {
+                ids = newestFirst(ids);
             }
+            PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out), OUTPUT_BUFFER), false);
+            for (int start = 0; start < ids.size(); start += CHUNK) {
+                List<ObjectId> chunk =
+                    ids.subList(start, Math.min(start + CHUNK, ids.size()));
+                chunk.parallelStream()
+                    .map(id -> Commit.fromFile(id).logEntry())
+                    .forEachOrdered(out::print);
+            }
+            out.flush();
         }
     }
 
+    /** Returns the commits with sha1s in IDS ordered from newest to
+     *  oldest. Times come from the commit graph, so no commit is read;
+     *  commits made in the same second are ordered newest first by
+     *  their position in the graph. */
+    private static List<ObjectId> newestFirst(List<ObjectId> ids) {
+        long[] keys = new long[ids.size()];
+        int[] rows = new int[ids.size()];
+        for (int i = 0; i < rows.length; i += 1) {
+            rows[i] = CommitGraph.row(ids.get(i));
+        }
+        Integer[] order = new Integer[rows.length];
+        for (int i = 0; i < rows.length; i += 1) {
+            order[i] = i;
+            keys[i] = CommitGraph.time(rows[i]);
+        }
+        Arrays.parallelSort(order, (a, b) -> keys[a] != keys[b]
+                            ? Long.compare(keys[b], keys[a])
+                            : Integer.compare(rows[b], rows[a]));
+        List<ObjectId> result = new ArrayList<>(rows.length);
+        for (int i : order) {
+            result.add(ids.get(i));
+        }
+        return result;
+    }
+
     /** Prints out the ids of all commits that have the given commit message,
      * one per line. If there are multiple such commits, it prints out the ids
      * on separate lines. The commit message is a single operand; to indicate
-     * a multiword message, put the operand in quotation marks. */
+     * a multiword message, put the operand in quotation marks. With the
+     * operands --contains WORD, prints the ids of the commits whose message
+     * contains WORD, ignoring case. Only the commits that the MessageIndex
+     * returns are read. */
     public void find() {
-        List<String> files = Utils.plainFilenamesIn(Commit.COMMIT_FOLDER);
+        List<ObjectId> ids;
+        String msg = size() == 1 ? _rest[0] : null;
+        String word = null;
+        if (msg != null) {
+            ids = MessageIndex.withMessage(msg);
+        } else if (size() == 2 && _rest[0].equals("--contains")) {
+            word = _rest[1].toLowerCase(Locale.ROOT);
+            ids = MessageIndex.withWord(word);
+        } else {
+            throw Utils.error("Incorrect operands.");
+        }
         int count = 0;
-        String msg = _rest[0];
-        for (String id : files) {
-            Commit c = Commit.fromFile(id);
-            if (msg.equals(c.getMessage())) {
+        for (ObjectId id : ids) {
+            String m = Commit.fromFile(id).getMessage();
+            if (msg != null ? msg.equals(m)
+                : MessageIndex.words(m).contains(word)) {
                 count++;
                 System.out.println(id);
             }
@@ -421,26 +414,166 @@ public class Command implements Serializable {
         }
     }
 
+    /** Prints, as a unified diff, the changes to tracked files in the
+     * working directory that are not staged. With the operand --staged,
+     * prints the changes staged for the next commit instead, and with two
+     * commit ids, the changes from the first commit to the second. */
+    public void diff() throws IOException {
+        Map<String, ObjectId> before, after = null;
+        if (size() == 0) {
+            before = nextFiles();
+        } else if (size() == 1 && _rest[0].equals("--staged")) {
+            before = _session.headFiles();
+            after = nextFiles();
+        } else if (size() == 2) {
+            Commit c1 = Commit.fromFile(_rest[0]);
+            Commit c2 = Commit.fromFile(_rest[1]);
+            if (c1.getTree() != null && c2.getTree() != null) {
+                Set<String> changed =
+                    FileTree.differing(c1.getTree(), c2.getTree());
+                before = FileTree.files(c1.getTree(), changed);
+                after = FileTree.files(c2.getTree(), changed);
+            } else {
+                before = c1.getFiles() == null
+                    ? new HashMap<>() : c1.getFiles();
+                after = c2.getFiles() == null
+                    ? new HashMap<>() : c2.getFiles();
+            }
+        } else {
+            throw Utils.error("Incorrect operands.");
+        }
+        TreeSet<String> names = new TreeSet<>(before.keySet());
+        if (after != null) {
+            names.addAll(after.keySet());
+        }
+        StatCache stats = StatCache.fromFile();
+        OutputStream out = new BufferedOutputStream(System.out,
+                                                    OUTPUT_BUFFER);
+        for (String name : names) {
+            ObjectId oldId = before.get(name);
+            byte[] newText;
+            if (after == null) {
+                File f = Utils.join(CWD, name);
+                ObjectId id = stats.hash(f);
+                if (id != null && id.equals(oldId)) {
+                    continue;
+                }
+                newText = id == null ? null : Utils.readContents(f);
+            } else {
+                ObjectId newId = after.get(name);
+                if (oldId != null && oldId.equals(newId)) {
+                    continue;
+                }
+                newText = newId == null ? null : ObjectStore.read(newId);
+            }
+            byte[] oldText = oldId == null ? null : ObjectStore.read(oldId);
+            Diff d = new Diff(oldText == null ? EMPTY : oldText,
+                              newText == null ? EMPTY : newText);
+            if (!d.isEmpty()) {
+                out.write(String.format("diff --git a/%s b/%s%n", name, name)
+                          .getBytes(StandardCharsets.UTF_8));
+                d.print(out, oldText == null ? "/dev/null" : "a/" + name,
+                        newText == null ? "/dev/null" : "b/" + name);
+            }
+        }
+        out.flush();
+        stats.save();
+    }
+
+    /** Returns the files that the next commit would hold if it were made
+     * now, mapped to the contents they refer to: the files of the head
+     * commit, less those staged for removal, with the staged files put
+     * in. */
+    private HashMap<String, ObjectId> nextFiles() {
+        HashMap<String, ObjectId> result =
+            new HashMap<>(_session.headFiles());
+        result.keySet().removeAll(removed());
+        result.putAll(staged());
+        return result;
+    }
+
+    /** Moves the loose commit files left by older versions of Gitlet into
+     * the commit pack, merges the commit journal into the pack index, and
+     * reports how many commits were moved. */
+    public void packCommits() {
+        if (size() != 0) {
+            Utils.message("Incorrect operands.");
+        } else {
+            int moved = Commit.packLoose();
+            Utils.message("Packed %d loose commits.", moved);
+        }
+    }
+
+    /** Moves the blobs left in the BLOBS folder by older versions of Gitlet
+     * into the content-addressed object store and reports the space saved.*/
+    public void migrateBlobs() {
+        if (size() != 0) {
+            Utils.message("Incorrect operands.");
+        } else {
+            ObjectStore.migrate();
+        }
+    }
+
+    /** Packs the committed versions of every file into the blob pack as
+     * delta chains and reports the space saved. */
+    public void repack() {
+        if (size() != 0) {
+            Utils.message("Incorrect operands.");
+        } else {
+            BlobPack.repack();
+        }
+    }
+
+    /** Removes the commits and objects that cannot be reached from any
+     * branch or the staging area, and compacts the rest. Commits and loose
+     * objects younger than a grace period of GarbageCollector.GRACE_DAYS
+     * days, or of the number of days given by the operand --grace=DAYS,
+     * are kept. */
+    public void gc() {
+        int grace = GarbageCollector.GRACE_DAYS;
+        if (size() == 1 && _rest[0].matches("--grace=\\d{1,5}")) {
+            grace = Integer.parseInt(_rest[0].substring("--grace=".length()));
+        } else if (size() != 0) {
+            throw Utils.error("Incorrect operands.");
+        }
+        ArrayList<ObjectId> heads = new ArrayList<>();
+        for (String name : tree().getBranches()) {
+            heads.add(Branch.fromFile(name).getHead());
+        }
+        heads.add(tree().getLatestCommit());
+        GarbageCollector.collect(heads, staged().values(), grace);
+    }
+
+    /** Serves gitlet commands for this repository from a background
+     * process, or with the operand "stop", stops that process. */
+    public void daemon() throws IOException {
+        if (size() == 0) {
+            Daemon.serve();
+        } else if (size() == 1 && _rest[0].equals("stop")) {
+            Daemon.stop();
+        } else {
+            Utils.message("Incorrect operands.");
+        }
+    }
+
     /** Unstage the file with FILENAME if it is currently staged for addition.
      * If the file is tracked in the current commit, stage it for removal and
      * remove the file from the working directory if the user has not already
      * done so. File is not removed unless it is tracked. */
     public void rm(String filename) {
         Commit headCommit =  Commit.fromFile(getActiveBranch().getHead());
-        HashMap<String, String> files = headCommit.getFiles();
+        HashMap<String, ObjectId> files = headCommit.getFiles();
         File f = new File("./" + filename);
-        if (!f.exists() && !_tracked.contains(filename)) {
+        if (!f.exists() && !tracked().contains(filename)) {
             Utils.message("File does not exist.");
         }
         boolean removed = false;
-        if (_staged.containsKey(filename)) {
-            _staged.remove(filename);
-            File s = Utils.join(STAGING_AREA, filename);
-            s.delete();
+        if (staged().containsKey(filename)) {
+            index().unadd(filename);
             removed = true;
         }
         if (files != null && files.containsKey(filename)) {
-            _tree.addRemoved(filename);
+            index().remove(filename);
             Utils.restrictedDelete(f);
             removed = true;
         }
@@ -452,14 +585,14 @@ public class Command implements Serializable {
     /** Deletes the branch with the given name: only deletes the pointer,
      * not all commits associated with the branch. */
     public void rmBranch() {
-        if (!_tree.branchExists(_rest[0])) {
+        if (!tree().branchExists(_rest[0])) {
             Utils.message("A branch with that name does not exist.");
         } else if (size() != 1) {
             Utils.message("Incorrect operands.");
         } else if (getActiveBranch().getName().equals(_rest[0])) {
             Utils.message("Cannot remove the current branch.");
         } else {
-            _tree.removeBranch(_rest[0]);
+            tree().removeBranch(_rest[0]);
         }
     }
 
@@ -469,8 +602,7 @@ public class Command implements Serializable {
         if (size() != 1) {
             Utils.message("Incorrect operands.");
         } else {
-            _tree.addBranch(_rest[0], _tree.getLatestCommit(),
-                    getActiveBranch());
+            tree().addBranch(_rest[0], tree().getLatestCommit());
         }
     }
 
@@ -487,21 +619,21 @@ public class Command implements Serializable {
      * uniquely. Finally, automatically commit. */
     public void merge() throws IOException {
         String gb = _rest[0];
-        if (!_tree.getBranches().contains(gb)) {
+        if (!tree().getBranches().contains(gb)) {
             Utils.message("A branch with that name does not exist.");
         } else {
             Branch cu = getActiveBranch();
             Branch gi = Branch.fromFile(gb);
-            if (!_staged.isEmpty() || !_tree.getRemoved().isEmpty()) {
+            if (!index().isEmpty()) {
                 Utils.message("You have uncommitted changes.");
             } else if (gb.equals(cu.getName())) {
                 Utils.message("Cannot merge a branch with itself.");
-            } else if (!_untracked.isEmpty()) {
+            } else if (!untracked().isEmpty()) {
                 Utils.message("There is an untracked file in"
                         + " the way; delete it, or add and commit it first.");
             } else {
-                String sID = _tree.findSplit(cu, gi), cID = cu.getHead();
-                String gID = gi.getHead();
+                ObjectId sID = tree().findSplit(cu, gi), cID = cu.getHead();
+                ObjectId gID = gi.getHead();
                 Commit split = Commit.fromFile(sID);
                 if (gID.equals(sID)) {
                     Utils.message("Given branch is an "
@@ -519,23 +651,28 @@ public class Command implements Serializable {
     /** To handle a merge if none of the errors occur. Takes in the sha1 of the
      * active branch's head commit, CID, the given branch's head commit, GID,
      * and the split point, SID. Also takes in the name of the current active
-     * branch, CU, and the given branch, GB. */
-    public void mergeHandling(String cID, String gID, String sID, String cu,
-                              String gb) throws IOException {
-        Commit split = Commit.fromFile(sID);
-        Commit currHC = Commit.fromFile(cID);
-        Commit givenHC = Commit.fromFile(gID);
-        HashMap<String, String> spf = split.getFiles();
-        HashMap<String, String> cbf = currHC.getFiles();
-        HashMap<String, String> gbf = givenHC.getFiles();
+     * branch, CU, and the given branch, GB. Files in FileTree buckets that
+     * are the same in all three commits need nothing done, so only the
+     * files of the other buckets are looked at. */
+    public void mergeHandling(ObjectId cID, ObjectId gID, ObjectId sID,
+                              String cu, String gb) throws IOException {
+        Commit given = Commit.fromFile(gID);
+        ObjectId sTree = FileTree.of(Commit.fromFile(sID));
+        ObjectId cTree = FileTree.of(Commit.fromFile(cID));
+        ObjectId gTree = FileTree.of(given);
+        Set<String> changed = FileTree.differing(sTree, cTree, gTree);
+        HashMap<String, ObjectId> spf =
+            sTree == null ? null : FileTree.files(sTree, changed);
+        HashMap<String, ObjectId> cbf = FileTree.files(cTree, changed);
+        HashMap<String, ObjectId> gbf = FileTree.files(gTree, changed);
         if (spf != null) {
             for (String fName: spf.keySet()) {
-                String cbfV = cbf.get(fName), spfV = spf.get(fName);
-                String gbfV = gbf.get(fName);
+                ObjectId cbfV = cbf.get(fName), spfV = spf.get(fName);
+                ObjectId gbfV = gbf.get(fName);
                 if (!(cbfV == null) && cbfV.equals(spfV)) {
                     if (!(gbfV == null) && !gbfV.equals(spfV)) {
-                        checkoutCommit(gID, fName);
-                        _staged.put(fName, gbfV);
+                        checkoutCommit(given, fName);
+                        index().add(fName, gbfV);
                     } else if (gbfV == null) {
                         rm(fName);
                     }
@@ -543,14 +680,14 @@ public class Command implements Serializable {
             }
         }
         for (String fName: gbf.keySet()) {
-            String spfV = null;
+            ObjectId spfV = null;
             if (spf != null) {
                 spfV = spf.get(fName);
             }
-            String cbfV = cbf.get(fName), gbfV = gbf.get(fName);
+            ObjectId cbfV = cbf.get(fName), gbfV = gbf.get(fName);
             if (cbfV == null && spfV == null) {
-                checkoutCommit(gID, fName);
-                _staged.put(fName, gbfV);
+                checkoutCommit(given, fName);
+                index().add(fName, gbfV);
             }
         }
         ArrayList<String> modDiff = getModified(spf, cbf, gbf);
@@ -559,13 +696,11 @@ public class Command implements Serializable {
             for (String f: modDiff) {
                 String fileContent = "<<<<<<< HEAD\n";
                 if (cbf.get(f) != null) {
-                    File c = Utils.join(BLOBS_FOLDER, cbf.get(f));
-                    fileContent += Utils.readContentsAsString(c);
+                    fileContent += ObjectStore.readString(cbf.get(f));
                 }
                 fileContent += "=======\n";
                 if (gbf.get(f) != null) {
-                    File g = Utils.join(BLOBS_FOLDER, gbf.get(f));
-                    fileContent += Utils.readContentsAsString(g);
+                    fileContent += ObjectStore.readString(gbf.get(f));
                 }
                 fileContent += ">>>>>>>\n";
                 File c = Utils.join(CWD, f);
@@ -575,7 +710,7 @@ public class Command implements Serializable {
         }
         String msg = "Merged " + gb + " into "
                 + cu + ".";
-        String[] parents = new String[] {cID, gID};
+        ObjectId[] parents = new ObjectId[] {cID, gID};
         mergeCommit(msg, parents);
     }
 
@@ -583,16 +718,16 @@ public class Command implements Serializable {
      * be used to handle merge conflicts by taking in the files at the
      * split point, SPF, the files at the current head commit, CBF, and
      * the files at the head commit of the given branch, GBF. */
-    public ArrayList<String> getModified(HashMap<String, String> spf,
-                                         HashMap<String, String> cbf,
-                                         HashMap<String, String> gbf) {
+    public ArrayList<String> getModified(HashMap<String, ObjectId> spf,
+                                         HashMap<String, ObjectId> cbf,
+                                         HashMap<String, ObjectId> gbf) {
         ArrayList<String> modified = new ArrayList<>();
         if (spf != null) {
             for (String fName: spf.keySet()) {
-                if (!_staged.containsKey(fName)
-                        && !_tree.getRemoved().contains(fName)) {
-                    String cbfV = cbf.get(fName), spfV = spf.get(fName);
-                    String gbfV = gbf.get(fName);
+                if (!staged().containsKey(fName)
+                        && !removed().contains(fName)) {
+                    ObjectId cbfV = cbf.get(fName), spfV = spf.get(fName);
+                    ObjectId gbfV = gbf.get(fName);
                     if (cbfV != null && gbfV != null) {
                         if (!spfV.equals(cbfV) && !spfV.equals(gbfV)
                                 && !gbfV.equals(cbfV)) {
@@ -635,75 +770,85 @@ public class Command implements Serializable {
 
     /**Sets the active branch to branch with NAME. */
     public void setActiveBranch(String name) {
-        _tree.setActive(name);
-        _activeBranch = Branch.fromFile(name);
+        tree().setActive(name);
     }
 
     /** Returns the active Branch from file. */
     public Branch getActiveBranch() {
-        File activeBranch = Utils.join(GITLET_FOLDER, "active");
-        String name = Utils.readContentsAsString(activeBranch);
-        return Branch.fromFile(name);
+        return _session.activeBranch();
     }
 
-    /** Updates _tracked based on the files tracked by the head commit. */
-    public void setTracked() {
-        if (!_tracked.isEmpty()) {
-            _tracked.clear();
-        }
-        Branch active = getActiveBranch();
-        Commit head = Commit.fromFile(active.getHead());
-        HashMap<String, String> filesHC = head.getFiles();
-        if (filesHC != null) {
-            for (String fName: filesHC.keySet()) {
-                _tracked.add(fName);
-            }
-        }
-        if (_tree.getRemoved() != null) {
-            ArrayList<String> removed = _tree.getRemoved();
-            for (String fName: removed) {
-                _tracked.remove(fName);
-            }
-        }
+    /** Returns the GitTree of the repository. */
+    private GitTree tree() {
+        return _session.tree();
     }
 
-    /** Compares list of files tracked and files in CWD. Adds files from
-     * CWD that are not in tracked. */
-    public void setUntracked() {
-        File[] filesInCWD = CWD.listFiles();
-        for (File f: filesInCWD) {
-            if (f.isFile() && !_staged.containsKey(f.getName())
-                    && !_tracked.contains(f.getName())) {
-                _untracked.add(f.getName());
-            }
-        }
+    /** Returns the staging area. */
+    private StagingIndex index() {
+        return _session.index();
+    }
+
+    /** Returns the staged files mapped to the contents they refer to. */
+    private Map<String, ObjectId> staged() {
+        return _session.staged();
+    }
+
+    /** Returns the files staged for removal. */
+    private List<String> removed() {
+        return index().removed();
+    }
+
+    /** Returns the files tracked by the head commit, excluding those staged
+     * for removal. */
+    private ArrayList<String> tracked() {
+        return _session.tracked();
+    }
+
+    /** Returns the files in the working directory that are neither staged
+     * nor tracked. */
+    private ArrayList<String> untracked() {
+        return _session.untracked();
     }
 
     /** Checks if the files in the head commit and current working directory
      * match. Files with differences and their difference are added to
-     * _modified. */
+     * _modified. File contents are only rehashed when their size,
+     * modification time or inode changed since they were last hashed. */
     public void setModified() {
         _modified.clear();
         Branch active = getActiveBranch();
         Commit head = Commit.fromFile(active.getHead());
-        HashMap<String, String> files = head.getFiles();
-        for (String f: _tracked) {
+        HashMap<String, ObjectId> files = head.getFiles();
+        StatCache stats = StatCache.fromFile();
+        for (String f: tracked()) {
             File t = Utils.join(CWD, f);
-            String id = Utils.sha1(Utils.readContentsAsString(t));
-            String blobName = id.substring(0, 5) + f;
-            if (files != null && !blobName.equals(files.get(f))
-                    && !_staged.containsKey(f)) {
+            ObjectId id = stats.hash(t);
+            if (id != null && files != null && !id.equals(files.get(f))
+                    && !staged().containsKey(f)) {
                 _modified.put(f, "(modified)");
-            } else if (_staged.containsKey(f)) {
-                if (!_staged.get(f).equals(blobName)) {
+            } else if (staged().containsKey(f)) {
+                if (id != null && !id.equals(staged().get(f))) {
                     _modified.put(f, "(modified)");
                 } else if (!t.exists()) {
                     _modified.put(f, "(deleted)");
                 }
-            } else if (!t.exists() && !_tree.getRemoved().contains(f)) {
+            } else if (!t.exists() && !removed().contains(f)) {
                 _modified.put(f, "(deleted)");
             }
         }
+        ArrayList<String> paths = new ArrayList<>();
+        for (String f: tracked()) {
+            paths.add(Utils.join(CWD, f).getPath());
+        }
+        stats.retain(paths);
+        stats.save();
+    }
+
+    /** Saves the changes this command made to the staging area and
+     * applies its Transaction. Called once when the command ends. */
+    public void finish() {
+        _session.save();
+        Transaction.commit();
     }
 
     /** Returns the inputs excluding the command. */
@@ -711,24 +856,8 @@ public class Command implements Serializable {
         return _rest;
     }
 
-    /** A GitTree represents the repository. This is the tree that the
-     * all commits made are added to.*/
-    private GitTree _tree;
-
-    /** Maps filenames of added files to unique sha1 values which will
-     * snapshot file contents at the moment of addition. _staging area
-     * is cleared after a commit. */
-    private HashMap<String, String> _staged = new HashMap<>();
-
-    /**Contains the names of files in the repo that have not been added or
-     * have been removed. Updated when a new file is created by adding to
-     * _untracked and when a file is staged by removing from it. */
-    private ArrayList<String> _untracked = new ArrayList<>();
-
-    /**Contains the names of files in the repo that have not been added or
-     * have been removed. Updated when a new file is added through the add
-     * command and when a file is removed by removing from it. */
-    private ArrayList<String> _tracked = new ArrayList<>();
+    /** The repository state used by this command, read lazily. */
+    private Session _session = new Session();
 
     /**Names of modified files mapped to their modification
      * i.e. deleted, modified.*/
@@ -740,9 +869,6 @@ public class Command implements Serializable {
     /** Other arguments inputted excluding command. */
     private String[] _rest;
 
-    /** The current branch where commits are added to. */
-    private Branch _activeBranch;
-
     /**The position of the master pointer in the GitTree. The string
      * value is equivalent to the sha1 hash value of the commit
      * it is pointing to.*/
@@ -1,11 +1,20 @@
 package gitlet;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.time.ZonedDateTime;
 import java.io.File;
 import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
 
 
 /** A Commit object contains all the information that calling the
@@ -24,38 +33,50 @@ public class Commit implements Serializable {
         _parent = null;
         _timestamp = "Wed Dec 31 16:00:00 1969 -0800";
         _files = null;
-        byte[] serialized = Utils.serialize(this);
-        _sha1value = Utils.sha1(serialized);
-        _initialID = _sha1value;
         this.saveCommit();
+        _initialID = _sha1value;
     }
 
-    /** Constructs a new Commit object with message MSG, that tracks files in
-     * FILES which contains filenames mapped to blobNames, with parents PARENTS.
-     * A commit will only have more than one parent if it is a merge commit.*/
-    public Commit(String msg, HashMap<String, String> files, String[] parents) {
+    /** Constructs a new Commit object with message MSG, that tracks the
+     * files in the FileTree with id TREE, with parents PARENTS. A commit
+     * will only have more than one parent if it is a merge commit.*/
+    public Commit(String msg, ObjectId tree, ObjectId[] parents) {
         _parent = parents;
         _message = msg;
         ZonedDateTime now = ZonedDateTime.now();
         _timestamp = TIME_FORMAT.format(now) + " -0800";
-        _files = files;
-        byte[] serialized = Utils.serialize(this);
-        _sha1value = Utils.sha1(serialized);
+        _tree = tree;
         this.saveCommit();
     }
 
+    /** Constructs the commit with sha1 ID whose fields are read from IN. */
+    private Commit(ObjectId id, Codec.Reader in) {
+        _message = in.string();
+        _timestamp = in.string();
+        ArrayList<ObjectId> parents = in.ids();
+        _parent = parents == null ? null : parents.toArray(new ObjectId[0]);
+        _tree = in.id();
+        _sha1value = id;
+    }
+
     /** Prints a commit as required for the log command. */
     public void printCommit() {
-        System.out.println("===");
-        System.out.format("commit %s%n", this.getHash());
-        if (this.getParent() != null && this.getParent().length > 1) {
-            String p1 = this.getParent()[0].substring(0, 7);
-            String p2 = this.getParent()[1].substring(0, 7);
-            System.out.format("Merge: %s %s%n", p1, p2);
+        System.out.print(logEntry());
+    }
+
+    /** Returns the lines that the log command prints for this commit. */
+    public String logEntry() {
+        String nl = System.lineSeparator();
+        StringBuilder entry = new StringBuilder(128);
+        entry.append("===").append(nl);
+        entry.append("commit ").append(getHash()).append(nl);
+        if (getParent() != null && getParent().length > 1) {
+            entry.append("Merge: ").append(getParent()[0].toHex(), 0, 7)
+                .append(' ').append(getParent()[1].toHex(), 0, 7).append(nl);
         }
-        System.out.format("Date: %s%n", this.getTimestamp());
-        System.out.println(this.getMessage());
-        System.out.println();
+        entry.append("Date: ").append(getTimestamp()).append(nl);
+        entry.append(getMessage()).append(nl).append(nl);
+        return entry.toString();
     }
 
 
@@ -69,74 +90,293 @@ public class Commit implements Serializable {
         return this._timestamp;
     }
 
+    /** Returns the time of the commit in seconds since the epoch. */
+    public long getTime() {
+        return ZonedDateTime.parse(_timestamp, STAMP_FORMAT).toEpochSecond();
+    }
+
     /** Returns the sha1 hash value of parent commit. */
-    public String[] getParent() {
+    public ObjectId[] getParent() {
         return this._parent;
     }
 
     /** Returns the sha1 hash value of the commit. */
-    public String getHash() {
+    public ObjectId getHash() {
         return this._sha1value;
     }
 
-    /** Returns the files saved in this commit as a HashMap. */
-    public HashMap<String, String> getFiles() {
+    /** Returns the files saved in this commit as a HashMap, which is
+     * shared with every other user of the commit and must not be
+     * modified. The files are read from the commit's FileTree the first
+     * time they are needed. */
+    public synchronized HashMap<String, ObjectId> getFiles() {
+        if (_files == null && _tree != null) {
+            _files = FileTree.files(_tree);
+            CommitCache.put(this);
+        }
         return this._files;
     }
 
-    /**Creates a file with name "sha1 Hash of commit", serializes the
-     *  commit object and saves it to COMMITS folder. */
+    /** Returns the number of files of this commit that have been read,
+     * without reading any. */
+    int loadedFiles() {
+        HashMap<String, ObjectId> files = _files;
+        return files == null ? 0 : files.size();
+    }
+
+    /** Returns the id of the FileTree holding the files of this commit, or
+     * null if it has no files or was made before trees existed. */
+    public ObjectId getTree() {
+        return _tree;
+    }
+
+    /**Encodes the commit, sets its sha1 hash to the hash of the encoding,
+     * appends the encoding to the commit pack under that hash, and adds
+     * the commit to the commit graph and the message index. */
     public void saveCommit() {
-        File c = Utils.join(COMMIT_FOLDER, this.getHash());
-        Utils.writeObject(c, this);
+        byte[] encoded = encode();
+        _sha1value = Utils.sha1Id(encoded);
+        CommitPack.append(_sha1value, encoded);
+        CommitGraph.add(this);
+        MessageIndex.add(this);
+    }
+
+    /** Returns the encoding of the commit in the Codec format. */
+    byte[] encode() {
+        List<ObjectId> parents =
+            _parent == null ? null : Arrays.asList(_parent);
+        return new Codec.Writer().string(_message).string(_timestamp)
+            .ids(parents).id(_tree).toByteArray();
+    }
+
+    /** Returns the commit with sha1 ID saved as DATA, which is either its
+     * encoding or, for commits written by earlier versions of Gitlet, its
+     * Java serialization. */
+    static Commit decode(ObjectId id, byte[] data) {
+        if (Codec.isSerialized(data)) {
+            return Utils.deserialize(data, Commit.class);
+        }
+        return new Commit(id, new Codec.Reader(data));
     }
 
     /** Takes in the unique SHA1 of a commit and returns the commit saved
-     * in a file in the COMMIT_FOLDER with matching sha1. */
-    public static Commit fromFile(String sha1) {
-        int size = sha1.length();
-        File c = new File(COMMIT_FOLDER, sha1);
-        if (size < Utils.UID_LENGTH) {
-            List<String> files = Utils.plainFilenamesIn(Commit.COMMIT_FOLDER);
-            for (String id : files) {
-                String shortened = id.substring(0, size);
-                if (shortened.equals(sha1)) {
-                    c = new File(COMMIT_FOLDER, id);
+     * in the commit pack, or in a loose file in the COMMIT_FOLDER, with
+     * matching sha1. Commits already read are returned from the
+     * CommitCache. */
+    public static Commit fromFile(ObjectId sha1) {
+        Commit result = CommitCache.get(sha1);
+        if (result != null) {
+            return result;
+        }
+        byte[] packed = CommitPack.read(sha1);
+        if (packed != null) {
+            result = decode(sha1, packed);
+        } else {
+            File c = looseFile(sha1);
+            if (!c.exists()) {
+                throw Utils.error("No commit with that id exists.");
+            }
+            result = decode(sha1, Utils.readContents(c));
+        }
+        CommitCache.put(result);
+        return result;
+    }
+
+    /** Returns the commit whose sha1 is ID, or the only one whose sha1
+     * starts with ID, where ID is a commit id as given on the command
+     * line. */
+    public static Commit fromFile(String id) {
+        return fromFile(ObjectId.isHex(id) ? ObjectId.fromHex(id)
+                        : resolve(id));
+    }
+
+    /** Returns the full sha1 of the only commit whose id starts with PREFIX.
+     * Packed commits are found through the sorted commit index; loose
+     * commits left by older versions are checked by name. Exits with an
+     * error if no commit or more than one commit matches. */
+    static ObjectId resolve(String prefix) {
+        List<ObjectId> matches = CommitPack.withPrefix(prefix, 2);
+        List<ObjectId> loose = looseIds();
+        if (!loose.isEmpty()) {
+            matches = new ArrayList<>(matches);
+            for (ObjectId id : loose) {
+                if (id.toHex().startsWith(prefix) && !matches.contains(id)) {
+                    matches.add(id);
+                }
+            }
+        }
+        if (matches.isEmpty()) {
+            throw Utils.error("No commit with that id exists.");
+        } else if (matches.size() > 1) {
+            throw Utils.error("Ambiguous commit id: %s.", prefix);
+        }
+        return matches.get(0);
+    }
+
+    /** Returns the sha1 of every commit in the repository, packed or
+     * loose, in lexicographic order. */
+    public static List<ObjectId> ids() {
+        List<ObjectId> loose = looseIds();
+        List<ObjectId> packed = CommitPack.ids();
+        if (loose.isEmpty()) {
+            return packed;
+        }
+        ArrayList<ObjectId> all = new ArrayList<>(packed);
+        all.addAll(loose);
+        Collections.sort(all);
+        return all;
+    }
+
+    /** Moves every loose commit file in the COMMIT_FOLDER into the commit
+     * pack, whose index is rewritten with the journal merged into it.
+     * Returns the number of commits that were moved. */
+    public static int packLoose() {
+        List<ObjectId> loose = looseIds();
+        TreeMap<ObjectId, byte[]> commits = new TreeMap<>();
+        for (ObjectId id : loose) {
+            commits.put(id, Utils.readContents(looseFile(id)));
+        }
+        int added = CommitPack.appendAll(commits);
+        for (ObjectId id : loose) {
+            CommitGraph.row(id);
+            looseFile(id).delete();
+        }
+        return added;
+    }
+
+    /** Returns the sha1s of the loose commit files left in the
+     * COMMIT_FOLDER by earlier versions of Gitlet. */
+    static List<ObjectId> looseIds() {
+        List<String> names = Utils.plainFilenamesIn(COMMIT_FOLDER);
+        List<ObjectId> result = new ArrayList<>();
+        if (names != null) {
+            for (String name : names) {
+                if (ObjectId.isHex(name)) {
+                    result.add(ObjectId.fromHex(name));
                 }
             }
-        } else if (!c.exists()) {
-            Utils.message("No commit with that id exists.");
-            System.exit(0);
         }
-        return Utils.readObject(c, Commit.class);
+        return result;
+    }
+
+    /** Returns the loose commit file that holds, or would hold, the
+     * commit with sha1 ID. */
+    static File looseFile(ObjectId id) {
+        return new File(COMMIT_FOLDER, id.toHex());
     }
 
     /** Returns the sha1 of the initial commit. */
-    public static String getInitial() {
+    public static ObjectId getInitial() {
         return _initialID;
     }
 
+    /** Reads the fields of a commit serialized by an earlier version of
+     * Gitlet from IN, in the form described by serialPersistentFields,
+     * turning its sha1s and the blob names of its files into ObjectIds. */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        _message = (String) fields.get("_message", null);
+        _timestamp = (String) fields.get("_timestamp", null);
+        _sha1value = toId((String) fields.get("_sha1value", null));
+        _tree = toId((String) fields.get("_tree", null));
+        String[] parents = (String[]) fields.get("_parent", null);
+        if (parents != null) {
+            _parent = new ObjectId[parents.length];
+            for (int i = 0; i < parents.length; i += 1) {
+                _parent[i] = toId(parents[i]);
+            }
+        }
+        HashMap<String, String> files =
+            (HashMap<String, String>) fields.get("_files", null);
+        if (files != null) {
+            _files = new HashMap<>();
+            for (Map.Entry<String, String> f : files.entrySet()) {
+                _files.put(f.getKey(), ObjectStore.contentId(f.getValue()));
+            }
+        }
+    }
+
+    /** Writes this commit to OUT in the form that readObject reads. */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("_message", _message);
+        fields.put("_timestamp", _timestamp);
+        fields.put("_sha1value", toHex(_sha1value));
+        fields.put("_tree", toHex(_tree));
+        if (_parent != null) {
+            String[] parents = new String[_parent.length];
+            for (int i = 0; i < parents.length; i += 1) {
+                parents[i] = toHex(_parent[i]);
+            }
+            fields.put("_parent", parents);
+        }
+        if (_files != null) {
+            HashMap<String, String> files = new HashMap<>();
+            for (Map.Entry<String, ObjectId> f : _files.entrySet()) {
+                files.put(f.getKey(), f.getValue().toHex());
+            }
+            fields.put("_files", files);
+        }
+        out.writeFields();
+    }
 
-    /** The files contained in the commit. File names are mapped to
-     * unique sha1 values. */
-    private HashMap<String, String> _files;
+    /** Returns the ObjectId written as HEX, or null if HEX is null. */
+    private static ObjectId toId(String hex) {
+        return hex == null ? null : ObjectId.fromHex(hex);
+    }
+
+    /** Returns ID as a hexadecimal numeral, or null if ID is null. */
+    private static String toHex(ObjectId id) {
+        return id == null ? null : id.toHex();
+    }
+
+
+    /** The files contained in the commit, or null if they have not been
+     * read from its FileTree. File names are mapped to unique sha1
+     * values. */
+    private HashMap<String, ObjectId> _files;
+
+    /** The id of the FileTree holding the files of the commit, or null
+     * for commits whose files are held in _files when they are read. */
+    private ObjectId _tree;
 
     /** Message included in the commit. */
     private String _message;
 
     /** Filename of the parent commit where the parent commit can be found. */
-    private String[] _parent;
+    private ObjectId[] _parent;
 
     /** Timestamp for the commit made. */
     private String _timestamp;
 
     /**The sha1 hash value. */
-    private String _sha1value;
+    private ObjectId _sha1value;
 
     /**Initial commit ID. */
-    private static String _initialID;
+    private static ObjectId _initialID;
+
+    /** Fixed so that commits written by earlier versions of Gitlet can
+     * still be read after methods are added to this class. */
+    private static final long serialVersionUID = -5432333116423404379L;
+
+    /** The fields of the Java serialization of a commit, as earlier
+     * versions of Gitlet wrote it, with every sha1 held as a String. */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("_files", HashMap.class),
+        new ObjectStreamField("_tree", String.class),
+        new ObjectStreamField("_message", String.class),
+        new ObjectStreamField("_parent", String[].class),
+        new ObjectStreamField("_timestamp", String.class),
+        new ObjectStreamField("_sha1value", String.class),
+    };
 
     /**Representation for timestamp.*/
     public static final DateTimeFormatter TIME_FORMAT =
             DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy");
+
+    /**Representation for a timestamp together with its zone offset.*/
+    private static final DateTimeFormatter STAMP_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z");
 }
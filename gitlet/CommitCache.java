@@ -0,0 +1,106 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A process-wide cache of decoded commits, so that a command that looks
+ * at the same commit several times, or a daemon serving many commands,
+ * reads and decodes it only once. Commits are never changed once they are
+ * made, so a cached commit can be handed to any number of callers and
+ * threads; callers must not modify the map returned by getFiles. The
+ * least recently used commits are dropped once the cache holds more than
+ * MAX_ENTRIES commits or more than about MAX_BYTES bytes of them.
+ * @author Divya Sivanandan */
+class CommitCache {
+
+    /** Largest number of commits kept. */
+    static final int MAX_ENTRIES = 4096;
+
+    /** Largest estimated size in bytes of the commits kept. */
+    static final long MAX_BYTES = 32 << 20;
+
+    /** Returns the cached commit with full sha1 ID, or null if it is not
+     *  cached. */
+    static synchronized Commit get(ObjectId id) {
+        Commit c = CACHE.get(id);
+        if (c == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return c;
+    }
+
+    /** Caches the commit C under its sha1, dropping the least recently
+     *  used commits if the cache is then too large. A commit already
+     *  cached is counted again at its current size, which grows once its
+     *  files have been read. */
+    static synchronized void put(Commit c) {
+        long size = size(c);
+        if (size > MAX_BYTES) {
+            if (CACHE.remove(c.getHash()) != null) {
+                _bytes -= SIZES.remove(c.getHash());
+            }
+            return;
+        }
+        CACHE.put(c.getHash(), c);
+        Long old = SIZES.put(c.getHash(), size);
+        _bytes += size - (old == null ? 0 : old);
+        Iterator<ObjectId> lru = CACHE.keySet().iterator();
+        while (CACHE.size() > MAX_ENTRIES || _bytes > MAX_BYTES) {
+            _bytes -= SIZES.remove(lru.next());
+            lru.remove();
+        }
+    }
+
+    /** Forgets every cached commit. Used once commits have been removed
+     *  from the repository. */
+    static synchronized void clear() {
+        CACHE.clear();
+        SIZES.clear();
+        _bytes = 0;
+    }
+
+    /** Returns the number of lookups that found their commit cached. */
+    static synchronized long hits() {
+        return _hits;
+    }
+
+    /** Returns the number of lookups that did not. */
+    static synchronized long misses() {
+        return _misses;
+    }
+
+    /** Returns a rough estimate of the memory in bytes taken by C: a fixed
+     *  amount for the commit and another for each of its files that has
+     *  been read. */
+    private static long size(Commit c) {
+        return COMMIT_BYTES + (long) c.loadedFiles() * FILE_BYTES;
+    }
+
+    /** Estimated bytes taken by a commit apart from its files. */
+    private static final long COMMIT_BYTES = 512;
+
+    /** Estimated bytes taken by each entry of a commit's files: the map
+     *  entry, a short string and an ObjectId. */
+    private static final long FILE_BYTES = 160;
+
+    /** Cached commits by sha1, least recently used first. */
+    private static final Map<ObjectId, Commit> CACHE =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The estimated size in bytes of each commit in CACHE, by sha1. */
+    private static final Map<ObjectId, Long> SIZES = new HashMap<>();
+
+    /** Estimated total size in bytes of the commits in CACHE. */
+    private static long _bytes;
+
+    /** Number of lookups that found their commit. */
+    private static long _hits;
+
+    /** Number of lookups that did not. */
+    private static long _misses;
+
+}
@@ -0,0 +1,271 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A compact, memory-mapped table of the shape of the commit history.
+ * Every commit has one fixed-width row holding its sha1, the rows of its
+ * (at most two) parents, its generation number and its timestamp. Rows are
+ * appended as commits are made, so a commit's parents always come before
+ * it. Walking the history through the graph never deserializes a commit.
+ * The graph is read from several threads at once, as by global-log and gc,
+ * but only changed while holding the class's lock.
+ * @author Divya Sivanandan */
+class CommitGraph {
+
+    /** The file that holds the graph. */
+    static final File GRAPH_FILE = Utils.join(CommitPack.PACK_FOLDER,
+                                              "commits.graph");
+
+    /** Size in bytes of a row: sha1, two parent rows, generation number
+     *  and timestamp. */
+    static final int ROW_SIZE = Utils.UID_LENGTH + 3 * Integer.BYTES
+        + Long.BYTES;
+
+    /** Row number standing for a missing parent. */
+    static final int NONE = -1;
+
+    /** Returns the number of commits in the graph. */
+    static int size() {
+        return graph().capacity() / ROW_SIZE;
+    }
+
+    /** Returns the row of the commit with full sha1 ID, adding it and any
+     *  of its ancestors that are missing from the graph first. Safe to
+     *  call from several threads at once. */
+    static int row(ObjectId id) {
+        Integer r = rows().get(id);
+        if (r == null) {
+            synchronized (CommitGraph.class) {
+                r = rows().get(id);
+                if (r == null) {
+                    backfill(id);
+                    r = rows().get(id);
+                }
+            }
+        }
+        return r;
+    }
+
+    /** Returns the sha1 of the commit at ROW. */
+    static ObjectId id(int row) {
+        return ObjectId.fromAscii(graph(), row * ROW_SIZE);
+    }
+
+    /** Returns the row of the first parent of the commit at ROW, or NONE
+     *  for the initial commit. */
+    static int parent(int row) {
+        return graph().getInt(row * ROW_SIZE + Utils.UID_LENGTH);
+    }
+
+    /** Returns the row of the second parent of the commit at ROW, or NONE
+     *  if it is not a merge commit. */
+    static int secondParent(int row) {
+        return graph().getInt(row * ROW_SIZE + Utils.UID_LENGTH
+                              + Integer.BYTES);
+    }
+
+    /** Returns the generation number of the commit at ROW: one for the
+     *  initial commit, and one more than the largest generation number of
+     *  its parents otherwise. */
+    static int generation(int row) {
+        return graph().getInt(row * ROW_SIZE + Utils.UID_LENGTH
+                              + 2 * Integer.BYTES);
+    }
+
+    /** Returns the time of the commit at ROW in seconds since the epoch. */
+    static long time(int row) {
+        return graph().getLong(row * ROW_SIZE + Utils.UID_LENGTH
+                               + 3 * Integer.BYTES);
+    }
+
+    /** Returns true if the commit with sha1 ANCESTOR can be reached from
+     *  the commit with sha1 DESCENDANT by following parents. Commits whose
+     *  generation number is below that of ANCESTOR are not explored. */
+    static boolean isAncestor(ObjectId ancestor, ObjectId descendant) {
+        int target = row(ancestor), start = row(descendant);
+        int cutoff = generation(target);
+        boolean[] seen = new boolean[size()];
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.push(start);
+        while (!work.isEmpty()) {
+            int r = work.pop();
+            if (r == target) {
+                return true;
+            }
+            if (r == NONE || seen[r] || generation(r) <= cutoff) {
+                continue;
+            }
+            seen[r] = true;
+            work.push(parent(r));
+            work.push(secondParent(r));
+        }
+        return false;
+    }
+
+    /** Appends a row for commit C, whose parents must already be in the
+     *  graph. Does nothing if C is already in the graph. */
+    static synchronized void add(Commit c) {
+        ObjectId key = c.getHash();
+        if (rows().containsKey(key)) {
+            return;
+        }
+        ObjectId[] parents = c.getParent();
+        int p1 = NONE, p2 = NONE, gen = 0;
+        if (parents != null && parents[0] != null) {
+            p1 = row(parents[0]);
+            gen = generation(p1);
+        }
+        if (parents != null && parents.length > 1) {
+            p2 = row(parents[1]);
+            gen = Math.max(gen, generation(p2));
+        }
+        ByteBuffer r = ByteBuffer.allocate(ROW_SIZE);
+        r.put(key.toAscii());
+        r.putInt(p1).putInt(p2).putInt(gen + 1).putLong(c.getTime());
+        r.flip();
+        CommitPack.PACK_FOLDER.mkdir();
+        try (FileChannel ch = FileChannel.open(GRAPH_FILE.toPath(),
+                                               StandardOpenOption.CREATE,
+                                               StandardOpenOption.WRITE,
+                                               StandardOpenOption.APPEND)) {
+            while (r.hasRemaining()) {
+                ch.write(r);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not write to the commit graph.");
+        }
+        Transaction.written(GRAPH_FILE);
+        int n = rows().size();
+        _graph = null;
+        _rows.put(key, n);
+    }
+
+    /** Rewrites the graph so that it holds only the rows of the commits at
+     *  the rows marked in KEEP, which must include the parents of each of
+     *  those commits, in the order they are now. The new graph is written
+     *  to a temporary file that is renamed into place. */
+    static synchronized void retain(boolean[] keep) {
+        ByteBuffer graph = graph();
+        int[] renumbered = new int[size()];
+        int n = 0;
+        for (int r = 0; r < size(); r += 1) {
+            renumbered[r] = keep[r] ? n++ : NONE;
+        }
+        ByteBuffer out = ByteBuffer.allocate(n * ROW_SIZE);
+        for (int r = 0; r < size(); r += 1) {
+            if (keep[r]) {
+                byte[] id = new byte[Utils.UID_LENGTH];
+                graph.get(r * ROW_SIZE, id);
+                int p1 = parent(r), p2 = secondParent(r);
+                out.put(id);
+                out.putInt(p1 == NONE ? NONE : renumbered[p1]);
+                out.putInt(p2 == NONE ? NONE : renumbered[p2]);
+                out.putInt(generation(r)).putLong(time(r));
+            }
+        }
+        try {
+            File tmp = File.createTempFile("graph", null,
+                                           CommitPack.PACK_FOLDER);
+            Utils.writeContents(tmp, out.array());
+            Transaction.force(tmp);
+            _graph = null;
+            _rows = null;
+            Files.move(tmp.toPath(), GRAPH_FILE.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Could not write the commit graph.");
+        }
+    }
+
+    /** Adds the commit with sha1 ID and all of its ancestors that are not
+     *  yet in the graph, parents first. Used for histories written before
+     *  the graph existed. */
+    private static synchronized void backfill(ObjectId id) {
+        ArrayDeque<Commit> work = new ArrayDeque<>();
+        work.push(Commit.fromFile(id));
+        while (!work.isEmpty()) {
+            Commit c = work.peek();
+            boolean ready = true;
+            if (c.getParent() != null) {
+                for (ObjectId p : c.getParent()) {
+                    if (p != null && !rows().containsKey(p)) {
+                        work.push(Commit.fromFile(p));
+                        ready = false;
+                    }
+                }
+            }
+            if (ready) {
+                add(work.pop());
+            }
+        }
+    }
+
+    /** Forgets the graph if another process has added rows to it since it
+     *  was read. */
+    static synchronized void refresh() {
+        long length = GRAPH_FILE.length();
+        ConcurrentHashMap<ObjectId, Integer> rows = _rows;
+        ByteBuffer graph = _graph;
+        if ((rows != null && (long) rows.size() * ROW_SIZE != length)
+            || (graph != null && graph.capacity() != length)) {
+            _graph = null;
+            _rows = null;
+        }
+    }
+
+    /** Returns the memory-mapped graph, mapping it if necessary. Safe to
+     *  call from several threads at once; the graph is mapped only once
+     *  each time it changes. */
+    private static ByteBuffer graph() {
+        ByteBuffer graph = _graph;
+        if (graph == null) {
+            synchronized (CommitGraph.class) {
+                graph = _graph;
+                if (graph == null) {
+                    graph = Utils.map(GRAPH_FILE);
+                    _graph = graph;
+                }
+            }
+        }
+        return graph;
+    }
+
+    /** Returns the map from sha1s to rows, reading it from the graph the
+     *  first time it is needed. Safe to call from several threads at
+     *  once. */
+    private static ConcurrentHashMap<ObjectId, Integer> rows() {
+        ConcurrentHashMap<ObjectId, Integer> rows = _rows;
+        if (rows == null) {
+            synchronized (CommitGraph.class) {
+                rows = _rows;
+                if (rows == null) {
+                    ByteBuffer graph = graph();
+                    int n = graph.capacity() / ROW_SIZE;
+                    rows = new ConcurrentHashMap<>(n);
+                    for (int r = 0; r < n; r += 1) {
+                        rows.put(ObjectId.fromAscii(graph, r * ROW_SIZE), r);
+                    }
+                    _rows = rows;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /** The current mapping of GRAPH_FILE, or null if not yet mapped.
+     *  Volatile, since the graph is read from several threads at once. */
+    private static volatile ByteBuffer _graph;
+
+    /** Maps the sha1 of each commit in the graph to its row, or is null if
+     *  not yet read. Volatile, like _graph. */
+    private static volatile ConcurrentHashMap<ObjectId, Integer> _rows;
+
+}
@@ -0,0 +1,167 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the CommitGraph, as written by commands run in a scratch
+ *  repository. The commands work on the repository in their working
+ *  directory, so each is run as a separate process.
+ *  @author Divya Sivanandan
+ */
+public class CommitGraphTest {
+
+    /** Every commit gets one more than the largest generation number of
+     *  its parents, so the two sides of a merge can differ in length and
+     *  the merge commit still follows the longer one. */
+    @Test
+    public void generations() throws Exception {
+        File dir = history();
+        HashMap<String, Row> rows = rows(dir);
+        assertEquals(6, rows.size());
+        for (Row r : rows.values()) {
+            int expected = 1;
+            for (String p : r._parents) {
+                assertTrue(p, rows.containsKey(p));
+                expected = Math.max(expected, rows.get(p)._generation + 1);
+            }
+            assertEquals(expected, r._generation);
+        }
+        assertEquals(1, rows.get(id(dir, "initial commit"))._generation);
+        assertEquals(2, rows.get(id(dir, "A"))._generation);
+        assertEquals(3, rows.get(id(dir, "B"))._generation);
+        assertEquals(3, rows.get(id(dir, "C"))._generation);
+        assertEquals(4, rows.get(id(dir, "D"))._generation);
+        Row merge = rows.get(id(dir, "Merged other into master."));
+        assertEquals(2, merge._parents.size());
+        assertEquals(5, merge._generation);
+    }
+
+    /** A history written before the graph existed is added to it, parents
+     *  first, the first time a command walks it, and ends up with the same
+     *  rows as if the graph had been kept all along. */
+    @Test
+    public void backfill() throws Exception {
+        File dir = history();
+        HashMap<String, Row> before = rows(dir);
+        String log = run(dir, "log");
+        assertTrue(graph(dir).delete());
+        assertEquals(log, run(dir, "log"));
+        HashMap<String, Row> after = rows(dir);
+        assertEquals(before.keySet(), after.keySet());
+        for (String id : before.keySet()) {
+            assertEquals(before.get(id)._generation,
+                         after.get(id)._generation);
+            assertEquals(new HashSet<>(before.get(id)._parents),
+                         new HashSet<>(after.get(id)._parents));
+        }
+        assertEquals("Given branch is an ancestor of the current branch.\n",
+                     run(dir, "merge", "other"));
+    }
+
+    /** Returns a new scratch directory holding a repository whose master
+     *  branch has commits A, C and D after the initial commit, and a
+     *  branch other, made at A, with commit B, merged into master. */
+    private static File history() throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        run(dir, "init");
+        commit(dir, "f.txt", "A");
+        run(dir, "branch", "other");
+        commit(dir, "f.txt", "C");
+        commit(dir, "f.txt", "D");
+        run(dir, "checkout", "other");
+        commit(dir, "g.txt", "B");
+        run(dir, "checkout", "master");
+        assertEquals("", run(dir, "merge", "other"));
+        return dir;
+    }
+
+    /** Writes MSG to the file NAME in DIR, and adds and commits it with
+     *  the message MSG. */
+    private static void commit(File dir, String name, String msg)
+        throws IOException, InterruptedException {
+        Utils.writeContents(new File(dir, name), msg + "\n");
+        run(dir, "add", name);
+        run(dir, "commit", msg);
+    }
+
+    /** Returns the sha1 of the only commit in DIR with message MSG. */
+    private static String id(File dir, String msg)
+        throws IOException, InterruptedException {
+        return run(dir, "find", msg).trim();
+    }
+
+    /** Returns the graph file of the repository in DIR. */
+    private static File graph(File dir) {
+        return new File(dir, CommitGraph.GRAPH_FILE.getPath());
+    }
+
+    /** Returns the rows of the graph of the repository in DIR, by sha1,
+     *  checking that each parent comes before its children. */
+    private static HashMap<String, Row> rows(File dir) {
+        ByteBuffer graph = ByteBuffer.wrap(Utils.readContents(graph(dir)));
+        int n = graph.capacity() / CommitGraph.ROW_SIZE;
+        String[] ids = new String[n];
+        HashMap<String, Row> result = new HashMap<>();
+        for (int r = 0; r < n; r += 1) {
+            byte[] id = new byte[Utils.UID_LENGTH];
+            graph.get(id);
+            ids[r] = new String(id, StandardCharsets.US_ASCII);
+            Row row = new Row();
+            for (int k = 0; k < 2; k += 1) {
+                int p = graph.getInt();
+                assertTrue(p < r);
+                if (p != CommitGraph.NONE) {
+                    row._parents.add(ids[p]);
+                }
+            }
+            row._generation = graph.getInt();
+            graph.getLong();
+            result.put(ids[r], row);
+        }
+        return result;
+    }
+
+    /** Runs gitlet.Main with arguments ARGS in DIR and returns what it
+     *  printed. */
+    private static String run(File dir, String... args)
+        throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(Utils.join(System.getProperty("java.home"), "bin", "java")
+                .getPath());
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add("gitlet.Main");
+        cmd.addAll(Arrays.asList(args));
+        Process p = new ProcessBuilder(cmd).directory(dir)
+            .redirectErrorStream(true).start();
+        String output = new String(p.getInputStream().readAllBytes(),
+                                   StandardCharsets.UTF_8);
+        assertTrue(p.waitFor(WAIT_SECONDS, TimeUnit.SECONDS));
+        return output;
+    }
+
+    /** A row of the graph. */
+    private static class Row {
+        /** The sha1s of the parents, in order. */
+        private final List<String> _parents = new ArrayList<>();
+
+        /** The generation number. */
+        private int _generation;
+    }
+
+    /** Longest time to wait for a process, in seconds. */
+    private static final int WAIT_SECONDS = 30;
+
+}
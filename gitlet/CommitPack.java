@@ -0,0 +1,439 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/** An append-only pack of serialized commits. Each record in the pack is the
+ * commit's sha1 followed by the length and bytes of the serialized commit.
+ * A separate PackIndex holds one fixed-width entry (sha1, offset) per
+ * commit, sorted by sha1, so a lookup is a binary search over the
+ * memory-mapped index followed by a single read from the memory-mapped
+ * pack.
+ *
+ * A new commit's entry is not inserted into the index, which would mean
+ * moving every entry after it. It is appended instead to a journal of
+ * entries in the order the commits were made, which is read into a sorted
+ * map and consulted whenever the index has no entry. Once the journal
+ * holds JOURNAL_LIMIT entries, and whenever pack-commits or gc runs, the
+ * journal is merged into a new index, which is written to a temporary
+ * file and renamed into place before the journal is deleted. A crash
+ * therefore leaves every entry in the index, the journal, or both.
+ *
+ * gc replaces the pack with a new generation, as PackIndex describes, so
+ * a reader never pairs an index with a pack it does not describe. The
+ * pack, index and journal of the generation that is current when the pack
+ * is first read are mapped together, and stay in use until refresh() sees
+ * that a newer generation has replaced them.
+ * @author Divya Sivanandan */
+class CommitPack {
+
+    /** Folder that contains the pack and its index. */
+    static final File PACK_FOLDER = Utils.join(".gitlet", "PACK");
+
+    /** The name of the pack, which its files are named after. */
+    static final String PACK_NAME = "commits";
+
+    /** Suffix of the pack file that commit records are appended to. */
+    static final String PACK_SUFFIX = ".pack";
+
+    /** Suffix of the sorted index of the records in the pack. */
+    static final String INDEX_SUFFIX = ".idx";
+
+    /** Suffix of the file that holds the entries of records appended to
+     *  the pack since the index was last written, in the order they were
+     *  appended. */
+    static final String JOURNAL_SUFFIX = ".journal";
+
+    /** Number of entries the journal may hold before it is merged into
+     *  the index. */
+    static final int JOURNAL_LIMIT = 4096;
+
+    /** Returns true if the commit with full sha1 ID is in the pack. */
+    static boolean contains(ObjectId id) {
+        return offset(id) >= 0;
+    }
+
+    /** Returns the serialized commit with full sha1 ID, or null if it is
+     *  not in the pack. */
+    static byte[] read(ObjectId id) {
+        long offset = offset(id);
+        if (offset < 0) {
+            return null;
+        }
+        ByteBuffer pack = pack().duplicate();
+        pack.position((int) offset + Utils.UID_LENGTH);
+        byte[] result = new byte[pack.getInt()];
+        pack.get(result);
+        return result;
+    }
+
+    /** Returns the sha1 of every commit in the pack in sorted order. */
+    static List<ObjectId> ids() {
+        ByteBuffer index = index();
+        int n = PackIndex.size(index);
+        List<ObjectId> result = new ArrayList<>(n + journal().size());
+        for (int k = 0; k < n; k += 1) {
+            result.add(PackIndex.id(index, k));
+        }
+        return merge(result, journal().keySet(), Integer.MAX_VALUE);
+    }
+
+    /** Returns the sha1s in the pack that start with PREFIX, in sorted
+     *  order, stopping after LIMIT matches. Finds the first match in the
+     *  index by binary search, so this takes O(log N + LIMIT) time for N
+     *  packed commits. The journal is searched between the least and the
+     *  greatest sha1 that start with PREFIX. */
+    static List<ObjectId> withPrefix(String prefix, int limit) {
+        ByteBuffer index = index();
+        byte[] key = prefix.getBytes(StandardCharsets.US_ASCII);
+        List<ObjectId> result = new ArrayList<>();
+        for (int k = PackIndex.lowerBound(index, key);
+             k < PackIndex.size(index) && result.size() < limit
+                 && PackIndex.startsWith(index, k, key);
+             k += 1) {
+            result.add(PackIndex.id(index, k));
+        }
+        int pad = Utils.UID_LENGTH - prefix.length();
+        if (pad < 0 || !ObjectId.isHex(prefix + "0".repeat(pad))) {
+            return result;
+        }
+        SortedMap<ObjectId, Long> journaled = journal().subMap(
+            ObjectId.fromHex(prefix + "0".repeat(pad)), true,
+            ObjectId.fromHex(prefix + "f".repeat(pad)), true);
+        return merge(result, journaled.keySet(), limit);
+    }
+
+    /** Returns the number of commits in the pack. */
+    static int size() {
+        return PackIndex.size(index()) + journal().size();
+    }
+
+    /** Appends the serialized commit DATA with full sha1 ID to the pack and
+     *  its entry to the journal, merging the journal into the index if it
+     *  is full. Does nothing if ID is already packed. */
+    static void append(ObjectId id, byte[] data) {
+        if (contains(id)) {
+            return;
+        }
+        long offset = writeRecord(id, data);
+        File journal = file(JOURNAL_SUFFIX);
+        try (OutputStream out = new FileOutputStream(journal, true)) {
+            out.write(PackIndex.entry(id, offset));
+        } catch (IOException excp) {
+            throw Utils.error("Could not update the commit index.");
+        }
+        Transaction.written(journal);
+        journal().put(id, offset);
+        if (journal().size() >= JOURNAL_LIMIT) {
+            writeIndex(entries());
+        }
+    }
+
+    /** Appends every commit in COMMITS, which maps sha1s to serialized
+     *  commits, to the pack, and writes the index once, merging the
+     *  journal into it. Commits that are already packed are skipped.
+     *  Returns the number of commits added. */
+    static int appendAll(Map<ObjectId, byte[]> commits) {
+        TreeMap<ObjectId, Long> entries = entries();
+        int added = 0;
+        for (Map.Entry<ObjectId, byte[]> c : commits.entrySet()) {
+            if (!entries.containsKey(c.getKey())) {
+                entries.put(c.getKey(), writeRecord(c.getKey(), c.getValue()));
+                added += 1;
+            }
+        }
+        writeIndex(entries);
+        return added;
+    }
+
+    /** Replaces the pack and its index with a new generation holding just
+     *  COMMITS, which maps sha1s to serialized commits, and deletes the
+     *  files of the old one. Both are written to temporary files and
+     *  synced, as the Transaction requires, before they are installed. */
+    static void rewrite(SortedMap<ObjectId, byte[]> commits) {
+        PACK_FOLDER.mkdir();
+        int gen = PackIndex.generation(PACK_FOLDER, PACK_NAME) + 1;
+        ByteBuffer index =
+            ByteBuffer.allocate(commits.size() * PackIndex.ENTRY_SIZE);
+        try {
+            File tmp = File.createTempFile("pack", null, PACK_FOLDER);
+            try (FileChannel ch = FileChannel.open(tmp.toPath(),
+                                                   StandardOpenOption.WRITE)) {
+                for (Map.Entry<ObjectId, byte[]> c : commits.entrySet()) {
+                    index.put(PackIndex.entry(c.getKey(), ch.position()));
+                    ByteBuffer record = record(c.getKey(), c.getValue());
+                    while (record.hasRemaining()) {
+                        ch.write(record);
+                    }
+                }
+            }
+            File tmpIndex = File.createTempFile("idx", null, PACK_FOLDER);
+            Utils.writeContents(tmpIndex, index.array());
+            Transaction.force(tmp);
+            Transaction.force(tmpIndex);
+            PackIndex.install(tmp, tmpIndex, PACK_FOLDER, PACK_NAME, gen);
+        } catch (IOException excp) {
+            throw Utils.error("Could not write the commit pack.");
+        }
+        invalidate();
+        PackIndex.retain(PACK_FOLDER, PACK_NAME, gen);
+    }
+
+    /** Replaces the index of the current generation with one holding
+     *  ENTRIES, which maps sha1s to pack offsets, and deletes the journal.
+     *  The pack and the new index are synced before the index is renamed
+     *  into place, and the journal is deleted only after that, so every
+     *  entry is always in one or the other. The pack is only appended to,
+     *  so it is described by the old index and the new one alike. */
+    private static void writeIndex(SortedMap<ObjectId, Long> entries) {
+        PACK_FOLDER.mkdir();
+        ByteBuffer out =
+            ByteBuffer.allocate(entries.size() * PackIndex.ENTRY_SIZE);
+        for (Map.Entry<ObjectId, Long> e : entries.entrySet()) {
+            out.put(PackIndex.entry(e.getKey(), e.getValue()));
+        }
+        File pack = file(PACK_SUFFIX);
+        File index = file(INDEX_SUFFIX);
+        File journal = file(JOURNAL_SUFFIX);
+        try {
+            File tmp = File.createTempFile("idx", null, PACK_FOLDER);
+            Utils.writeContents(tmp, out.array());
+            if (pack.exists()) {
+                Transaction.force(pack);
+            }
+            Transaction.force(tmp);
+            Files.move(tmp.toPath(), index.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(journal.toPath());
+        } catch (IOException excp) {
+            throw Utils.error("Could not update the commit index.");
+        }
+        invalidate();
+    }
+
+    /** Returns every entry of the index and the journal, mapping sha1s to
+     *  pack offsets. */
+    private static TreeMap<ObjectId, Long> entries() {
+        TreeMap<ObjectId, Long> result = new TreeMap<>(journal());
+        ByteBuffer index = index();
+        for (int k = 0; k < PackIndex.size(index); k += 1) {
+            result.put(PackIndex.id(index, k), PackIndex.offset(index, k));
+        }
+        return result;
+    }
+
+    /** Returns the pack offset of the record for the commit with full sha1
+     *  ID, or -1 if it is not in the pack. */
+    private static long offset(ObjectId id) {
+        ByteBuffer index = index();
+        int k = PackIndex.find(index, id);
+        if (k >= 0) {
+            return PackIndex.offset(index, k);
+        }
+        Long offset = journal().get(id);
+        return offset == null ? -1 : offset;
+    }
+
+    /** Returns the sorted list SORTED merged with the sorted MORE, with no
+     *  repeats, stopping after LIMIT elements. */
+    private static List<ObjectId> merge(List<ObjectId> sorted,
+                                        Collection<ObjectId> more,
+                                        int limit) {
+        if (more.isEmpty()) {
+            return sorted;
+        }
+        List<ObjectId> result =
+            new ArrayList<>(sorted.size() + more.size());
+        Iterator<ObjectId> a = sorted.iterator();
+        Iterator<ObjectId> b = more.iterator();
+        ObjectId x = a.hasNext() ? a.next() : null;
+        ObjectId y = b.hasNext() ? b.next() : null;
+        while ((x != null || y != null) && result.size() < limit) {
+            int c = x == null ? 1 : y == null ? -1 : x.compareTo(y);
+            result.add(c <= 0 ? x : y);
+            if (c <= 0) {
+                x = a.hasNext() ? a.next() : null;
+            }
+            if (c >= 0) {
+                y = b.hasNext() ? b.next() : null;
+            }
+        }
+        return result;
+    }
+
+    /** Returns a pack record for the commit DATA with sha1 ID, ready to be
+     *  written. */
+    private static ByteBuffer record(ObjectId id, byte[] data) {
+        ByteBuffer record =
+            ByteBuffer.allocate(Utils.UID_LENGTH + Integer.BYTES
+                                + data.length);
+        record.put(id.toAscii());
+        record.putInt(data.length);
+        record.put(data);
+        record.flip();
+        return record;
+    }
+
+    /** Appends a record for the commit DATA with sha1 ID to the end of the
+     *  pack and returns the offset at which it starts. */
+    private static long writeRecord(ObjectId id, byte[] data) {
+        PACK_FOLDER.mkdir();
+        ByteBuffer record = record(id, data);
+        File pack = file(PACK_SUFFIX);
+        try (FileChannel ch = FileChannel.open(pack.toPath(),
+                                               StandardOpenOption.CREATE,
+                                               StandardOpenOption.WRITE)) {
+            long offset = ch.size();
+            ch.position(offset);
+            while (record.hasRemaining()) {
+                ch.write(record);
+            }
+            _pack = null;
+            Transaction.written(pack);
+            return offset;
+        } catch (IOException excp) {
+            throw Utils.error("Could not write to the commit pack.");
+        }
+    }
+
+    /** Returns the memory-mapped pack, mapping it if necessary. Safe to
+     *  call from several threads at once; the pack is mapped only once,
+     *  and again after each append. */
+    private static ByteBuffer pack() {
+        ByteBuffer pack = _pack;
+        if (pack == null) {
+            index();
+            synchronized (CommitPack.class) {
+                pack = _pack;
+                if (pack == null) {
+                    pack = Utils.map(file(PACK_SUFFIX));
+                    _pack = pack;
+                }
+            }
+        }
+        return pack;
+    }
+
+    /** Returns the memory-mapped index, first choosing the current
+     *  generation and mapping its index and pack together if that has not
+     *  been done yet. Safe to call from several threads at once; the index
+     *  is mapped only once. */
+    private static ByteBuffer index() {
+        ByteBuffer index = _index;
+        if (index == null) {
+            synchronized (CommitPack.class) {
+                index = _index;
+                if (index == null) {
+                    _generation = PackIndex.generation(PACK_FOLDER,
+                                                       PACK_NAME);
+                    _pack = Utils.map(PackIndex.file(PACK_FOLDER, PACK_NAME,
+                                                     _generation,
+                                                     PACK_SUFFIX));
+                    index = Utils.map(PackIndex.file(PACK_FOLDER, PACK_NAME,
+                                                     _generation,
+                                                     INDEX_SUFFIX));
+                    _index = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /** Returns the file with SUFFIX of the generation of the pack in
+     *  use. */
+    private static File file(String suffix) {
+        index();
+        return PackIndex.file(PACK_FOLDER, PACK_NAME, _generation, suffix);
+    }
+
+    /** Returns the entries of the journal, read from its file if
+     *  necessary, leaving out any that the index also has, as it may after
+     *  a crash. Safe to call from several threads at once. */
+    private static ConcurrentSkipListMap<ObjectId, Long> journal() {
+        ConcurrentSkipListMap<ObjectId, Long> journal = _journal;
+        if (journal == null) {
+            synchronized (CommitPack.class) {
+                journal = _journal;
+                if (journal == null) {
+                    journal = new ConcurrentSkipListMap<>();
+                    ByteBuffer index = index();
+                    ByteBuffer entries = Utils.map(file(JOURNAL_SUFFIX));
+                    int n = entries.capacity() / PackIndex.ENTRY_SIZE;
+                    for (int k = 0; k < n; k += 1) {
+                        ObjectId id = PackIndex.id(entries, k);
+                        if (PackIndex.find(index, id) < 0) {
+                            journal.put(id, PackIndex.offset(entries, k));
+                        }
+                    }
+                    _journal = journal;
+                }
+            }
+        }
+        return journal;
+    }
+
+    /** Drops the current mappings and journal if another process has
+     *  written to the pack, index or journal since they were read, or has
+     *  replaced them with a new generation. A new generation may have left
+     *  out commits that the CommitCache still holds, such as those gc has
+     *  removed, so the cache is cleared as well. */
+    static synchronized void refresh() {
+        ByteBuffer pack = _pack;
+        ByteBuffer index = _index;
+        ConcurrentSkipListMap<ObjectId, Long> journal = _journal;
+        if (index == null) {
+            return;
+        }
+        if (PackIndex.generation(PACK_FOLDER, PACK_NAME) != _generation) {
+            CommitCache.clear();
+            invalidate();
+        } else if ((pack != null
+                && pack.capacity() != file(PACK_SUFFIX).length())
+            || index.capacity() != file(INDEX_SUFFIX).length()
+            || (journal != null && (long) journal.size()
+                * PackIndex.ENTRY_SIZE != file(JOURNAL_SUFFIX).length())) {
+            invalidate();
+        }
+    }
+
+    /** Drops the current mappings and journal so that the next access sees
+     *  any changes made to the pack, index or journal, and chooses the
+     *  current generation again. */
+    private static synchronized void invalidate() {
+        _index = null;
+        _pack = null;
+        _journal = null;
+    }
+
+    /** The generation of the pack in use. Set before _index is. */
+    private static volatile int _generation;
+
+    /** The current mapping of the pack, or null if not yet mapped.
+     *  Volatile, since commits are read from several threads at once. */
+    private static volatile ByteBuffer _pack;
+
+    /** The current mapping of the index, or null if the generation in use
+     *  has not yet been chosen. Volatile, like _pack. */
+    private static volatile ByteBuffer _index;
+
+    /** The entries read from the journal and appended since, or null if
+     *  it has not been read. Volatile, like _pack. */
+    private static volatile ConcurrentSkipListMap<ObjectId, Long> _journal;
+
+}
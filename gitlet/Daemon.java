@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+
+/** A long-running Gitlet process that serves commands for the repository
+ * in its working directory over a Unix domain socket, so that a Client
+ * does not pay for starting a JVM, loading classes and mapping the packs
+ * and commit graph on every command. The caches kept by CommitPack,
+ * CommitGraph, BlobPack and MessageIndex stay warm between commands, and
+ * are dropped only when the files behind them have been rewritten.
+ *
+ * A request is the number of arguments followed by each argument. The
+ * reply is the exit status of the command followed by the length and
+ * bytes of what it wrote to standard output, then of standard error.
+ * Commands are served one at a time, each exactly as Main would run it.
+ * @author Divya Sivanandan */
+class Daemon {
+
+    /** Serves commands until told to stop. */
+    static void serve() throws IOException {
+        if (Client.forward("daemon") >= 0) {
+            return;
+        }
+        Files.deleteIfExists(Client.SOCKET_FILE.toPath());
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(
+                Client.SOCKET_FILE.toPath()));
+            boolean stop = false;
+            while (!stop) {
+                try (SocketChannel ch = server.accept()) {
+                    stop = handle(ch);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } finally {
+            Files.deleteIfExists(Client.SOCKET_FILE.toPath());
+        }
+    }
+
+    /** Tells the daemon serving the current directory to stop. */
+    static void stop() throws IOException {
+        if (Client.forward("daemon", "stop") < 0) {
+            throw Utils.error("No gitlet daemon is running.");
+        }
+    }
+
+    /** Reads one request from CH, runs it and sends back the reply.
+     *  Returns true if the request was to stop the daemon. */
+    private static boolean handle(SocketChannel ch) throws IOException {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(ch));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        boolean stop = false;
+        int status = 0;
+        if (args.length > 0 && args[0].equals("daemon")) {
+            PrintStream out = new PrintStream(stdout, true);
+            if (args.length == 1) {
+                out.println("A gitlet daemon is already running.");
+            } else if (args.length == 2 && args[1].equals("stop")) {
+                out.format("Daemon stopped. Commit cache: %d hits, "
+                           + "%d misses.%n", CommitCache.hits(),
+                           CommitCache.misses());
+                stop = true;
+            } else {
+                out.println("Incorrect operands.");
+            }
+        } else {
+            status = run(args, stdout, stderr);
+        }
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(ch)));
+        out.writeInt(status);
+        out.writeInt(stdout.size());
+        stdout.writeTo(out);
+        out.writeInt(stderr.size());
+        stderr.writeTo(out);
+        out.flush();
+        return stop;
+    }
+
+    /** Runs the command given by ARGS as Main would, writing what it
+     *  prints to STDOUT, and the stack trace of any unexpected exception
+     *  to STDERR. Returns the exit status Main would have had. */
+    private static int run(String[] args, ByteArrayOutputStream stdout,
+                           ByteArrayOutputStream stderr) {
+        PrintStream saved = System.out;
+        PrintStream out = new PrintStream(stdout, true);
+        System.setOut(out);
+        try {
+            CommitPack.refresh();
+            CommitGraph.refresh();
+            BlobPack.refresh();
+            ObjectStore.refresh();
+            MessageIndex.refresh();
+            Main.run(args);
+            return 0;
+        } catch (Exception excp) {
+            PrintStream err = new PrintStream(stderr, true);
+            err.print("Exception in thread \"main\" ");
+            excp.printStackTrace(err);
+            return 1;
+        } finally {
+            out.flush();
+            System.setOut(saved);
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Daemon and the Client. Both work on the repository in
+ *  their working directory, so each test runs them as separate processes
+ *  in a new scratch repository.
+ *  @author Divya Sivanandan
+ */
+public class DaemonTest {
+
+    /** Commands sent through a running daemon print what Main prints, and
+     *  see and make the same changes to the repository. */
+    @Test
+    public void clientMatchesMain() throws Exception {
+        File dir = repository();
+        Process daemon = startDaemon(dir);
+        try {
+            assertEquals(run(dir, "gitlet.Main", "log"),
+                         run(dir, "gitlet.Client", "log"));
+            assertEquals(run(dir, "gitlet.Main", "status"),
+                         run(dir, "gitlet.Client", "status"));
+            write(dir, "g.txt", "notwug\n");
+            assertEquals("", run(dir, "gitlet.Client", "add", "g.txt"));
+            assertEquals("", run(dir, "gitlet.Client", "commit",
+                                 "Added g"));
+            assertEquals(run(dir, "gitlet.Main", "find", "Added g"),
+                         run(dir, "gitlet.Client", "find", "Added g"));
+            assertEquals("No changes added to the commit.\n",
+                         run(dir, "gitlet.Client", "commit", "Again"));
+            assertEquals("A gitlet daemon is already running.\n",
+                         run(dir, "gitlet.Main", "daemon"));
+        } finally {
+            assertTrue(run(dir, "gitlet.Main", "daemon", "stop")
+                       .startsWith("Daemon stopped. Commit cache: "));
+            assertTrue(daemon.waitFor(WAIT_SECONDS, TimeUnit.SECONDS));
+        }
+        assertFalse(Client.SOCKET_FILE.getPath(),
+                    new File(dir, Client.SOCKET_FILE.getPath()).exists());
+        assertEquals(run(dir, "gitlet.Main", "log"),
+                     run(dir, "gitlet.Client", "log"));
+    }
+
+    /** A daemon stops serving commits that another process has removed
+     *  with gc, even those it has already read and cached. */
+    @Test
+    public void seesGarbageCollection() throws Exception {
+        File dir = repository();
+        String first = run(dir, "gitlet.Main", "find", "Added f").trim();
+        write(dir, "g.txt", "notwug\n");
+        run(dir, "gitlet.Main", "add", "g.txt");
+        run(dir, "gitlet.Main", "commit", "Added g");
+        String second = run(dir, "gitlet.Main", "find", "Added g").trim();
+        Process daemon = startDaemon(dir);
+        try {
+            assertEquals("", run(dir, "gitlet.Client", "checkout", second,
+                                 "--", "g.txt"));
+            run(dir, "gitlet.Main", "reset", first);
+            assertTrue(run(dir, "gitlet.Main", "gc", "--grace=0")
+                       .startsWith("Removed 1 unreachable commits"));
+            assertEquals("No commit with that id exists.\n",
+                         run(dir, "gitlet.Client", "checkout", second,
+                             "--", "g.txt"));
+            assertEquals(run(dir, "gitlet.Main", "log"),
+                         run(dir, "gitlet.Client", "log"));
+        } finally {
+            run(dir, "gitlet.Main", "daemon", "stop");
+            assertTrue(daemon.waitFor(WAIT_SECONDS, TimeUnit.SECONDS));
+        }
+    }
+
+    /** Without a daemon the Client runs the command itself, and asking to
+     *  stop the daemon is an error. */
+    @Test
+    public void noDaemon() throws Exception {
+        File dir = repository();
+        assertEquals(run(dir, "gitlet.Main", "status"),
+                     run(dir, "gitlet.Client", "status"));
+        assertEquals("No gitlet daemon is running.\n",
+                     run(dir, "gitlet.Main", "daemon", "stop"));
+        assertEquals("Incorrect operands.\n",
+                     run(dir, "gitlet.Main", "daemon", "x", "y"));
+    }
+
+    /** Returns a new scratch directory holding a repository with one
+     *  commit, which adds f.txt. */
+    private static File repository() throws IOException,
+                                           InterruptedException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        run(dir, "gitlet.Main", "init");
+        write(dir, "f.txt", "wug\n");
+        run(dir, "gitlet.Main", "add", "f.txt");
+        run(dir, "gitlet.Main", "commit", "Added f");
+        return dir;
+    }
+
+    /** Starts a daemon serving DIR and waits until it is listening. */
+    private static Process startDaemon(File dir) throws IOException,
+                                                        InterruptedException {
+        Process daemon = command(dir, "gitlet.Main", "daemon").start();
+        File socket = new File(dir, Client.SOCKET_FILE.getPath());
+        long deadline = System.currentTimeMillis()
+            + TimeUnit.SECONDS.toMillis(WAIT_SECONDS);
+        while (!socket.exists()) {
+            if (!daemon.isAlive() || System.currentTimeMillis() > deadline) {
+                daemon.destroy();
+                fail("daemon did not start");
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+        return daemon;
+    }
+
+    /** Runs the class MAIN with arguments ARGS in DIR and returns what it
+     *  printed. */
+    private static String run(File dir, String main, String... args)
+        throws IOException, InterruptedException {
+        Process p = command(dir, main, args).start();
+        String output = new String(p.getInputStream().readAllBytes(),
+                                   StandardCharsets.UTF_8);
+        assertTrue(p.waitFor(WAIT_SECONDS, TimeUnit.SECONDS));
+        return output;
+    }
+
+    /** Returns a builder for a JVM, with this one's class path, that runs
+     *  the class MAIN with arguments ARGS in DIR. */
+    private static ProcessBuilder command(File dir, String main,
+                                          String... args) {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(Utils.join(System.getProperty("java.home"), "bin", "java")
+                .getPath());
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(main);
+        cmd.addAll(Arrays.asList(args));
+        return new ProcessBuilder(cmd).directory(dir)
+            .redirectErrorStream(true);
+    }
+
+    /** Writes CONTENTS to the file NAME in DIR. */
+    private static void write(File dir, String name, String contents) {
+        Utils.writeContents(new File(dir, name), contents);
+    }
+
+    /** Longest time to wait for a process, in seconds. */
+    private static final int WAIT_SECONDS = 30;
+
+    /** Interval at which to check whether the daemon is listening. */
+    private static final int POLL_MILLIS = 50;
+
+}
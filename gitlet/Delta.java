@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Copy/insert deltas between two versions of a file. A delta starts with
+ * the lengths of the base and of the target, followed by a sequence of
+ * instructions that rebuild the target: either copy a range of the base,
+ * or insert bytes carried in the delta itself. All numbers are written as
+ * variable-length integers.
+ *
+ * Matches are found by indexing every BLOCK-byte block of the base by its
+ * hash, and sliding a rolling hash of the same width over the target.
+ * Whenever the window hashes to an indexed block with the same bytes, the
+ * match is extended in both directions and emitted as a single copy.
+ * @author Divya Sivanandan */
+class Delta {
+
+    /** Width in bytes of the blocks and of the rolling hash window. */
+    static final int BLOCK = 16;
+
+    /** Instruction that inserts literal bytes. */
+    private static final int INSERT = 0;
+
+    /** Instruction that copies a range of the base. */
+    private static final int COPY = 1;
+
+    /** Multiplier of the rolling hash. */
+    private static final int MULTIPLIER = 257;
+
+    /** MULTIPLIER raised to the power BLOCK - 1, the weight of the byte
+     *  leaving the window. */
+    private static final int OUT_WEIGHT = power(MULTIPLIER, BLOCK - 1);
+
+    /** Returns a delta that rebuilds TARGET from BASE. */
+    static byte[] encode(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInt(out, base.length);
+        writeInt(out, target.length);
+        int pending = 0, i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            Integer at = blocks.get(h);
+            if (at != null
+                && Arrays.equals(base, at, at + BLOCK,
+                                 target, i, i + BLOCK)) {
+                int from = at, start = i;
+                while (start > pending && from > 0
+                       && base[from - 1] == target[start - 1]) {
+                    from -= 1;
+                    start -= 1;
+                }
+                int end = i + BLOCK;
+                for (int b = at + BLOCK; end < target.length
+                         && b < base.length && base[b] == target[end];
+                     b += 1) {
+                    end += 1;
+                }
+                insert(out, target, pending, start);
+                out.write(COPY);
+                writeInt(out, from);
+                writeInt(out, end - start);
+                i = pending = end;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    h = (h - (target[i] & 0xff) * OUT_WEIGHT) * MULTIPLIER
+                        + (target[i + BLOCK] & 0xff);
+                }
+                i += 1;
+            }
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the target rebuilt by applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        ByteBuffer in = ByteBuffer.wrap(delta);
+        if (readInt(in) != base.length) {
+            throw Utils.error("Delta does not match its base.");
+        }
+        byte[] result = new byte[readInt(in)];
+        int pos = 0;
+        while (in.hasRemaining()) {
+            int op = in.get();
+            if (op == COPY) {
+                int from = readInt(in), len = readInt(in);
+                System.arraycopy(base, from, result, pos, len);
+                pos += len;
+            } else {
+                int len = readInt(in);
+                in.get(result, pos, len);
+                pos += len;
+            }
+        }
+        if (pos != result.length) {
+            throw Utils.error("Delta is truncated.");
+        }
+        return result;
+    }
+
+    /** Writes an instruction to OUT inserting the bytes of TARGET from
+     *  FROM up to but not including TO, if there are any. */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            writeInt(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Returns the hash of the BLOCK bytes of DATA starting at AT. */
+    private static int hash(byte[] data, int at) {
+        int h = 0;
+        for (int i = at; i < at + BLOCK; i += 1) {
+            h = h * MULTIPLIER + (data[i] & 0xff);
+        }
+        return h;
+    }
+
+    /** Returns X raised to the power N, with int overflow. */
+    private static int power(int x, int n) {
+        int result = 1;
+        for (int i = 0; i < n; i += 1) {
+            result *= x;
+        }
+        return result;
+    }
+
+    /** Writes the non-negative VALUE to OUT seven bits at a time, low bits
+     *  first, with the high bit of each byte set if more bytes follow. */
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Reads a number written by writeInt from IN. */
+    private static int readInt(ByteBuffer in) {
+        int result = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.get();
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+
+}
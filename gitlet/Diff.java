@@ -0,0 +1,477 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/** The differences between the lines of two versions of a file, and
+ * their printing as a unified diff.
+ *
+ * Lines are first numbered so that equal lines have equal numbers, and
+ * the rest of the work compares numbers. Regions of the two versions are
+ * then matched the way histogram diff does: the line that occurs least
+ * often in the old region, and also occurs in the new one, anchors the
+ * longest run of equal lines around it, and the parts before and after
+ * the run are matched in turn. A region whose only common lines are ones
+ * that occur more than MAX_OCCURRENCES times, like blank lines, is
+ * matched, parts and all, by Myers' algorithm in its linear-space form,
+ * which gives up and treats the whole region as changed once the edit
+ * script would be longer than MAX_COST. Regions are kept on an explicit
+ * stack, so neither step recurses.
+ * @author Divya Sivanandan */
+class Diff {
+
+    /** Number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** Lines that occur more often than this in a region are not used as
+     *  anchors for it. */
+    static final int MAX_OCCURRENCES = 64;
+
+    /** Largest number of edits Myers' algorithm looks for in a region
+     *  before treating it as changed in full. */
+    static final int MAX_COST = 4096;
+
+    /** Number of leading bytes in which a NUL marks contents as binary. */
+    static final int BINARY_CHECK = 8000;
+
+    /** The differences between the lines of BEFORE and AFTER. */
+    Diff(byte[] before, byte[] after) {
+        _binary = isBinary(before) || isBinary(after);
+        if (_binary) {
+            _before = _after = null;
+            _a = _b = new int[0];
+            if (!Arrays.equals(before, after)) {
+                _edits.add(new int[] {0, 0, 0, 0});
+            }
+            return;
+        }
+        _before = new Lines(before);
+        _after = new Lines(after);
+        number();
+        compute();
+    }
+
+    /** Returns true if the two versions have the same lines. */
+    boolean isEmpty() {
+        return _edits.isEmpty();
+    }
+
+    /** Writes the differences to OUT as a unified diff, headed by the
+     *  names OLDNAME and NEWNAME, or nothing if there are none. */
+    void print(OutputStream out, String oldName, String newName)
+        throws IOException {
+        if (_edits.isEmpty()) {
+            return;
+        } else if (_binary) {
+            write(out, "Binary files %s and %s differ%n", oldName, newName);
+            return;
+        }
+        write(out, "--- %s%n+++ %s%n", oldName, newName);
+        for (int first = 0, last; first < _edits.size(); first = last + 1) {
+            last = first;
+            while (last + 1 < _edits.size()
+                   && _edits.get(last + 1)[0] - _edits.get(last)[1]
+                       <= 2 * CONTEXT) {
+                last += 1;
+            }
+            printHunk(out, first, last);
+        }
+    }
+
+    /** Writes to OUT the hunk holding the edits numbered FIRST to LAST. */
+    private void printHunk(OutputStream out, int first, int last)
+        throws IOException {
+        int[] e0 = _edits.get(first), e1 = _edits.get(last);
+        int aStart = Math.max(0, e0[0] - CONTEXT);
+        int bStart = e0[2] - (e0[0] - aStart);
+        int aEnd = Math.min(_a.length, e1[1] + CONTEXT);
+        int bEnd = e1[3] + (aEnd - e1[1]);
+        write(out, "@@ -%s +%s @@%n", range(aStart, aEnd - aStart),
+              range(bStart, bEnd - bStart));
+        int pos = aStart;
+        for (int k = first; k <= last; k += 1) {
+            int[] e = _edits.get(k);
+            for (; pos < e[0]; pos += 1) {
+                _before.write(out, ' ', pos);
+            }
+            for (int i = e[0]; i < e[1]; i += 1) {
+                _before.write(out, '-', i);
+            }
+            for (int j = e[2]; j < e[3]; j += 1) {
+                _after.write(out, '+', j);
+            }
+            pos = e[1];
+        }
+        for (; pos < aEnd; pos += 1) {
+            _before.write(out, ' ', pos);
+        }
+    }
+
+    /** Returns the range of LEN lines starting at line START (numbered
+     *  from 0) as it appears in a hunk header. */
+    private static String range(int start, int len) {
+        if (len == 1) {
+            return Integer.toString(start + 1);
+        } else if (len == 0) {
+            return start + ",0";
+        }
+        return (start + 1) + "," + len;
+    }
+
+    /** Writes FORMAT, formatted with ARGS, to OUT. */
+    private static void write(OutputStream out, String format,
+                              Object... args) throws IOException {
+        out.write(String.format(format, args)
+                  .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns true if TEXT has a NUL byte in its first BINARY_CHECK
+     *  bytes. */
+    private static boolean isBinary(byte[] text) {
+        int n = Math.min(text.length, BINARY_CHECK);
+        for (int i = 0; i < n; i += 1) {
+            if (text[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Numbers the lines of both versions into _a and _b, so that two lines
+     *  have the same number exactly when they have the same bytes. */
+    private void number() {
+        int na = _before.size(), nb = _after.size();
+        _a = new int[na];
+        _b = new int[nb];
+        int[] firstLine = new int[na + nb];
+        int[] slots = new int[Integer.highestOneBit(2 * (na + nb) + 1) << 1];
+        Arrays.fill(slots, -1);
+        int mask = slots.length - 1;
+        _distinct = 0;
+        for (int g = 0; g < na + nb; g += 1) {
+            Lines lines = g < na ? _before : _after;
+            int i = g < na ? g : g - na;
+            int slot = lines.hash(i) & mask;
+            int id = -1;
+            for (; slots[slot] >= 0; slot = (slot + 1) & mask) {
+                int h = firstLine[slots[slot]];
+                Lines other = h < na ? _before : _after;
+                if (lines.same(i, other, h < na ? h : h - na)) {
+                    id = slots[slot];
+                    break;
+                }
+            }
+            if (id < 0) {
+                id = _distinct++;
+                slots[slot] = id;
+                firstLine[id] = g;
+            }
+            if (g < na) {
+                _a[i] = id;
+            } else {
+                _b[i] = id;
+            }
+        }
+    }
+
+    /** Fills _edits with the changes that turn _a into _b. */
+    private void compute() {
+        int[] head = new int[_distinct], count = new int[_distinct];
+        int[] next = new int[_a.length];
+        Arrays.fill(head, -1);
+        Deque<int[]> work = new ArrayDeque<>();
+        work.push(new int[] {0, _a.length, 0, _b.length, HISTOGRAM});
+        while (!work.isEmpty()) {
+            int[] r = work.pop();
+            int aLo = r[0], aHi = r[1], bLo = r[2], bHi = r[3];
+            while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+                aLo += 1;
+                bLo += 1;
+            }
+            while (aLo < aHi && bLo < bHi && _a[aHi - 1] == _b[bHi - 1]) {
+                aHi -= 1;
+                bHi -= 1;
+            }
+            if (aLo == aHi || bLo == bHi) {
+                if (aLo < aHi || bLo < bHi) {
+                    _edits.add(new int[] {aLo, aHi, bLo, bHi});
+                }
+            } else if (r[4] == MYERS
+                       || !anchor(work, aLo, aHi, bLo, bHi, head, count,
+                                  next)) {
+                bisect(work, aLo, aHi, bLo, bHi);
+            }
+        }
+        _edits.sort(Comparator.<int[]>comparingInt(e -> e[0])
+                    .thenComparingInt(e -> e[2]));
+        for (int k = _edits.size() - 1; k > 0; k -= 1) {
+            int[] prev = _edits.get(k - 1), e = _edits.get(k);
+            if (prev[1] == e[0] && prev[3] == e[2]) {
+                prev[1] = e[1];
+                prev[3] = e[3];
+                _edits.remove(k);
+            }
+        }
+    }
+
+    /** Splits the region of lines [ALO, AHI) of _a and [BLO, BHI) of _b,
+     *  whose first lines differ and whose last lines differ, at its best
+     *  run of equal lines, pushing the parts before and after the run onto
+     *  WORK. As in git's histogram diff, a run is scored by how often its
+     *  rarest line occurs in _a, and displaces the best run found so far
+     *  if that is less often or the run is longer. A region with no common
+     *  lines is recorded as changed in full.
+     *  Returns false, and does nothing, if every common line occurs more
+     *  than MAX_OCCURRENCES times. HEAD, COUNT and NEXT are scratch space
+     *  that is left as it was found: HEAD and COUNT hold the first
+     *  occurrence and number of occurrences of each line number, and NEXT
+     *  the next occurrence of the line at each position of _a. */
+    private boolean anchor(Deque<int[]> work, int aLo, int aHi, int bLo,
+                           int bHi, int[] head, int[] count, int[] next) {
+        for (int i = aHi - 1; i >= aLo; i -= 1) {
+            next[i] = head[_a[i]];
+            head[_a[i]] = i;
+            count[_a[i]] += 1;
+        }
+        boolean common = false;
+        int bestCount = MAX_OCCURRENCES + 1, bestA = -1, bestB = -1;
+        int bestLen = 0;
+        for (int j = bLo; j < bHi;) {
+            int c = count[_b[j]], jNext = j + 1;
+            common |= c > 0;
+            if (c > 0 && c <= bestCount) {
+                for (int i = head[_b[j]]; i >= 0; i = next[i]) {
+                    int s = 0, e = 1, rc = c;
+                    while (i - s > aLo && j - s > bLo
+                           && _a[i - s - 1] == _b[j - s - 1]) {
+                        s += 1;
+                        rc = Math.min(rc, count[_a[i - s]]);
+                    }
+                    while (i + e < aHi && j + e < bHi
+                           && _a[i + e] == _b[j + e]) {
+                        rc = Math.min(rc, count[_a[i + e]]);
+                        e += 1;
+                    }
+                    if (rc < bestCount || s + e > bestLen) {
+                        bestCount = rc;
+                        bestA = i - s;
+                        bestB = j - s;
+                        bestLen = s + e;
+                    }
+                    jNext = Math.max(jNext, j + e);
+                }
+            }
+            j = jNext;
+        }
+        for (int i = aLo; i < aHi; i += 1) {
+            head[_a[i]] = -1;
+            count[_a[i]] = 0;
+        }
+        if (!common) {
+            _edits.add(new int[] {aLo, aHi, bLo, bHi});
+        } else if (bestA < 0) {
+            return false;
+        } else {
+            work.push(new int[] {bestA + bestLen, aHi, bestB + bestLen, bHi,
+                                 HISTOGRAM});
+            work.push(new int[] {aLo, bestA, bLo, bestB, HISTOGRAM});
+        }
+        return true;
+    }
+
+    /** Splits the region of lines [ALO, AHI) of _a and [BLO, BHI) of _b,
+     *  whose first lines differ and whose last lines differ, at a point on
+     *  a shortest edit script, found by running Myers' algorithm forwards
+     *  from the start and backwards from the end until the two meet. The
+     *  two parts are pushed onto WORK. Uses space linear in the size of
+     *  the region. If the script would be longer than MAX_COST, the region
+     *  is recorded as changed in full instead. The parts are matched by
+     *  Myers' algorithm in turn. */
+    private void bisect(Deque<int[]> work, int aLo, int aHi, int bLo,
+                        int bHi) {
+        int n = aHi - aLo, m = bHi - bLo, delta = n - m;
+        int maxD = Math.min((n + m + 1) / 2, MAX_COST);
+        int offset = maxD + 1, length = 2 * maxD + 3;
+        int[] v1 = new int[length], v2 = new int[length];
+        Arrays.fill(v1, -1);
+        Arrays.fill(v2, -1);
+        v1[offset + 1] = 0;
+        v2[offset + 1] = 0;
+        boolean front = (delta & 1) != 0;
+        int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int k = offset + k1;
+                int x1 = k1 == -d || (k1 != d && v1[k - 1] < v1[k + 1])
+                    ? v1[k + 1] : v1[k - 1] + 1;
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && _a[aLo + x1] == _b[bLo + y1]) {
+                    x1 += 1;
+                    y1 += 1;
+                }
+                v1[k] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (front) {
+                    int k2 = offset + delta - k1;
+                    if (k2 >= 0 && k2 < length && v2[k2] != -1
+                        && x1 >= n - v2[k2]) {
+                        split(work, aLo, aHi, bLo, bHi, x1, y1);
+                        return;
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int k = offset + k2;
+                int x2 = k2 == -d || (k2 != d && v2[k - 1] < v2[k + 1])
+                    ? v2[k + 1] : v2[k - 1] + 1;
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m
+                       && _a[aHi - x2 - 1] == _b[bHi - y2 - 1]) {
+                    x2 += 1;
+                    y2 += 1;
+                }
+                v2[k] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!front) {
+                    int k1 = offset + delta - k2;
+                    if (k1 >= 0 && k1 < length && v1[k1] != -1
+                        && v1[k1] >= n - x2) {
+                        int x1 = v1[k1];
+                        split(work, aLo, aHi, bLo, bHi, x1,
+                              offset + x1 - k1);
+                        return;
+                    }
+                }
+            }
+        }
+        _edits.add(new int[] {aLo, aHi, bLo, bHi});
+    }
+
+    /** Pushes onto WORK the parts of the region [ALO, AHI) of _a and
+     *  [BLO, BHI) of _b before and after the point X lines into the first
+     *  and Y lines into the second. A point at either end of the region
+     *  would not make progress, so the region is then recorded as changed
+     *  in full. */
+    private void split(Deque<int[]> work, int aLo, int aHi, int bLo,
+                       int bHi, int x, int y) {
+        if ((x == 0 && y == 0) || (aLo + x == aHi && bLo + y == bHi)) {
+            _edits.add(new int[] {aLo, aHi, bLo, bHi});
+        } else {
+            work.push(new int[] {aLo + x, aHi, bLo + y, bHi, MYERS});
+            work.push(new int[] {aLo, aLo + x, bLo, bLo + y, MYERS});
+        }
+    }
+
+    /** The lines of a text. Every line but possibly the last ends with a
+     *  newline, which is part of the line. */
+    private static class Lines {
+
+        /** The lines of TEXT, which is kept rather than copied. */
+        Lines(byte[] text) {
+            _text = text;
+            int n = _text.length, count = 0;
+            for (int i = 0; i < n; i += 1) {
+                if (_text[i] == '\n') {
+                    count += 1;
+                }
+            }
+            if (n > 0 && _text[n - 1] != '\n') {
+                count += 1;
+            }
+            _starts = new int[count + 1];
+            for (int i = 0, line = 1; i < n && line < count; i += 1) {
+                if (_text[i] == '\n') {
+                    _starts[line++] = i + 1;
+                }
+            }
+            _starts[count] = n;
+        }
+
+        /** Returns the number of lines. */
+        int size() {
+            return _starts.length - 1;
+        }
+
+        /** Returns a hash of the bytes of line I. */
+        int hash(int i) {
+            int h = 0;
+            for (int p = _starts[i]; p < _starts[i + 1]; p += 1) {
+                h = 31 * h + _text[p];
+            }
+            return h ^ (h >>> 16);
+        }
+
+        /** Returns true if line I has the same bytes as line J of OTHER. */
+        boolean same(int i, Lines other, int j) {
+            return Arrays.equals(_text, _starts[i], _starts[i + 1],
+                                 other._text, other._starts[j],
+                                 other._starts[j + 1]);
+        }
+
+        /** Writes line I to OUT, preceded by PREFIX and followed by a
+         *  newline and a note if the line has no newline of its own. */
+        void write(OutputStream out, char prefix, int i) throws IOException {
+            int start = _starts[i], end = _starts[i + 1];
+            out.write(prefix);
+            out.write(_text, start, end - start);
+            if (end == start || _text[end - 1] != '\n') {
+                out.write(NO_NEWLINE);
+            }
+        }
+
+        /** The text. */
+        private final byte[] _text;
+
+        /** The offset in _text of the start of each line, followed by the
+         *  length of _text. */
+        private final int[] _starts;
+    }
+
+    /** Marks a region on the work stack to be matched by anchor. */
+    private static final int HISTOGRAM = 0;
+
+    /** Marks a region on the work stack to be matched by bisect. */
+    private static final int MYERS = 1;
+
+    /** Written after a last line that has no newline. */
+    private static final byte[] NO_NEWLINE =
+        "\n\\ No newline at end of file\n".getBytes(StandardCharsets.UTF_8);
+
+    /** The lines of the old version, or null if either version is binary. */
+    private final Lines _before;
+
+    /** The lines of the new version, or null if either version is binary. */
+    private final Lines _after;
+
+    /** True if either version is binary, in which case the versions are
+     *  only compared as a whole. */
+    private final boolean _binary;
+
+    /** The number of each line of the old version. */
+    private int[] _a;
+
+    /** The number of each line of the new version. */
+    private int[] _b;
+
+    /** Number of different lines in the two versions. */
+    private int _distinct;
+
+    /** The changes, in order, each as the range of lines [E[0], E[1]) of
+     *  the old version replaced by the range [E[2], E[3]) of the new
+     *  one. */
+    private final List<int[]> _edits = new ArrayList<>();
+
+}
@@ -0,0 +1,173 @@
+package gitlet;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/** Tree objects, which hold the files of a commit so that commits share
+ * the parts of their file maps that they have in common. A commit refers
+ * to a root tree, which maps bucket names to subtrees; each subtree maps
+ * the names of the files in its bucket to the contents they refer to.
+ * Which bucket a file is in depends only on its name, and trees are
+ * stored in the ObjectStore under the sha1 of their encoding, so a commit
+ * writes only the subtrees of the buckets it changes, and two commits
+ * whose subtrees for a bucket have the same id have the same files in
+ * that bucket.
+ *
+ * Gitlet tracks only the plain files of the working directory, so the
+ * buckets take the place of the subdirectories a tree would otherwise be
+ * split by.
+ * @author Divya Sivanandan */
+class FileTree {
+
+    /** Number of buckets that files are spread over. */
+    static final int BUCKETS = 64;
+
+    /** Returns the id of the root tree of the files of commit C, or null if
+     *  C has no files. Commits made before trees existed have their trees
+     *  written first. */
+    static ObjectId of(Commit c) {
+        if (c.getTree() != null) {
+            return c.getTree();
+        } else if (c.getFiles() == null) {
+            return null;
+        }
+        return update(null, c.getFiles(), Set.of());
+    }
+
+    /** Returns the id of the root tree holding the files under ROOT, which
+     *  may be null for no files, with the files in REMOVED taken out and
+     *  then the files in CHANGES, which maps file names to the contents
+     *  they refer to, put in. Only the subtrees of buckets that change are
+     *  written. */
+    static ObjectId update(ObjectId root, Map<String, ObjectId> changes,
+                           Collection<String> removed) {
+        HashMap<String, ObjectId> buckets = read(root);
+        HashMap<String, HashMap<String, ObjectId>> touched = new HashMap<>();
+        for (String name : removed) {
+            subtree(buckets, touched, name).remove(name);
+        }
+        for (Map.Entry<String, ObjectId> e : changes.entrySet()) {
+            subtree(buckets, touched, e.getKey()).put(e.getKey(),
+                                                      e.getValue());
+        }
+        for (Map.Entry<String, HashMap<String, ObjectId>> e
+                 : touched.entrySet()) {
+            if (e.getValue().isEmpty()) {
+                buckets.remove(e.getKey());
+            } else {
+                buckets.put(e.getKey(), write(e.getValue()));
+            }
+        }
+        return write(buckets);
+    }
+
+    /** Returns all the files under ROOT, which may be null for no files,
+     *  mapped to the contents they refer to. */
+    static HashMap<String, ObjectId> files(ObjectId root) {
+        return files(root, read(root).keySet());
+    }
+
+    /** Returns the files under ROOT, which may be null for no files, that
+     *  are in the buckets named in BUCKETS, mapped to the contents they
+     *  refer to. */
+    static HashMap<String, ObjectId> files(ObjectId root,
+                                           Set<String> buckets) {
+        HashMap<String, ObjectId> result = new HashMap<>();
+        for (Map.Entry<String, ObjectId> e : read(root).entrySet()) {
+            if (buckets.contains(e.getKey())) {
+                result.putAll(read(e.getValue()));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the names of the buckets whose subtrees are not the same
+     *  under every one of ROOTS, any of which may be null for no files.
+     *  The files in every other bucket are the same under all of ROOTS. */
+    static Set<String> differing(ObjectId... roots) {
+        HashMap<String, ObjectId> first = read(roots[0]);
+        Set<String> result = new HashSet<>();
+        for (int i = 1; i < roots.length; i += 1) {
+            HashMap<String, ObjectId> other = read(roots[i]);
+            for (String b : first.keySet()) {
+                if (!first.get(b).equals(other.get(b))) {
+                    result.add(b);
+                }
+            }
+            for (String b : other.keySet()) {
+                if (!other.get(b).equals(first.get(b))) {
+                    result.add(b);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Adds to LIVE the id of the tree ROOT, of each of its subtrees and of
+     *  the contents that their files refer to. Subtrees already in LIVE
+     *  are taken to have been marked, and are not read again. LIVE must be
+     *  safe to use from several threads if this is called from several. */
+    static void mark(ObjectId root, Set<ObjectId> live) {
+        if (!live.add(root)) {
+            return;
+        }
+        for (ObjectId subtree : read(root).values()) {
+            if (live.add(subtree)) {
+                live.addAll(read(subtree).values());
+            }
+        }
+    }
+
+    /** Returns the name of the bucket that the file named NAME is in. */
+    static String bucket(String name) {
+        return KEYS[(name.hashCode() * MIX) >>> (Integer.SIZE - BUCKET_BITS)];
+    }
+
+    /** Returns the subtree, from TOUCHED, of the bucket that the file named
+     *  NAME is in, reading it first from the root BUCKETS if this is the
+     *  first time it is needed. */
+    private static HashMap<String, ObjectId> subtree(
+        HashMap<String, ObjectId> buckets,
+        HashMap<String, HashMap<String, ObjectId>> touched, String name) {
+        return touched.computeIfAbsent(bucket(name),
+                                       b -> read(buckets.get(b)));
+    }
+
+    /** Returns the map held by the tree with id ID, which is empty if ID is
+     *  null. Trees written by an earlier version of Gitlet may name the
+     *  contents of files by legacy blob name; Codec turns those into
+     *  content ids. */
+    private static HashMap<String, ObjectId> read(ObjectId id) {
+        if (id == null) {
+            return new HashMap<>();
+        }
+        return new Codec.Reader(ObjectStore.read(id)).refs();
+    }
+
+    /** Stores a tree holding the map ENTRIES and returns its id. */
+    private static ObjectId write(Map<String, ObjectId> entries) {
+        return ObjectStore.put(new Codec.Writer().refs(entries)
+                               .toByteArray());
+    }
+
+    /** Number of bits of a file name's hash that choose its bucket. */
+    private static final int BUCKET_BITS =
+        Integer.numberOfTrailingZeros(BUCKETS);
+
+    /** Odd multiplier that spreads the bits of a name's hash code over
+     *  its top bits. */
+    private static final int MIX = 0x9e3779b1;
+
+    /** The names of the buckets, two hexadecimal digits each. */
+    private static final String[] KEYS = new String[BUCKETS];
+
+    static {
+        for (int b = 0; b < BUCKETS; b += 1) {
+            KEYS[b] = String.format("%02x", b);
+        }
+    }
+
+}
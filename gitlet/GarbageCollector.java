@@ -0,0 +1,237 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/** Removes the commits and objects that can no longer be reached, and
+ * compacts the rest. A commit is live if it can be reached by following
+ * parents from a root, which is a branch head, the latest commit, or any
+ * commit made within the grace period. An object is live if it is the
+ * FileTree or the contents of a file of a live commit, or is staged.
+ *
+ * The commits are marked by walking the CommitGraph, which never reads a
+ * commit; the objects of the live commits are then marked from several
+ * threads at once, each subtree shared by several commits being read only
+ * once. The live commits are rewritten into a fresh commit pack and graph,
+ * and the records of the others are dropped from the message indexes. The
+ * live objects are repacked into the blob pack. Unreachable objects, and
+ * legacy blobs, are deleted only once they are older than the grace
+ * period, since a command running at the same time may have just written
+ * them, or stored them again, and not yet staged or committed them. The
+ * ObjectStore touches an object, or the pack that holds it, whenever it
+ * is stored again. Packed objects are taken to be as old as the pack, and
+ * unreachable ones in a pack younger than the grace period are written
+ * out as loose objects of the same age before the pack is rewritten
+ * without them.
+ * @author Divya Sivanandan */
+class GarbageCollector {
+
+    /** Default grace period in days. */
+    static final int GRACE_DAYS = 14;
+
+    /** Removes what cannot be reached from the commits in HEADS or the
+     *  contents referred to by STAGED, except for commits, objects and
+     *  legacy blobs younger than GRACEDAYS days, compacts the rest, and
+     *  prints how much space was reclaimed. */
+    static void collect(Collection<ObjectId> heads,
+                        Collection<ObjectId> staged, int graceDays) {
+        long before = size(Command.GITLET_FOLDER);
+        long cutoff = System.currentTimeMillis()
+            - TimeUnit.DAYS.toMillis(graceDays);
+        for (ObjectId id : Commit.ids()) {
+            CommitGraph.row(id);
+        }
+        boolean[] live = markCommits(heads, graceDays == 0 ? null : cutoff);
+        List<ObjectId> liveIds = new ArrayList<>();
+        for (int r = 0; r < live.length; r += 1) {
+            if (live[r]) {
+                liveIds.add(CommitGraph.id(r));
+            }
+        }
+        Set<ObjectId> objects = markObjects(liveIds, staged);
+        Set<ObjectId> stored = stored();
+        compactCommits(liveIds, live);
+        long packed = BlobPack.time();
+        if (packed >= cutoff) {
+            for (ObjectId id : BlobPack.ids()) {
+                if (!objects.contains(id)) {
+                    ObjectStore.loosen(id, packed);
+                }
+            }
+        }
+        BlobPack.repack(objects);
+        sweep(objects, cutoff);
+        long after = size(Command.GITLET_FOLDER);
+        Utils.message("Removed %d unreachable commits and %d unreachable "
+                      + "objects: %d bytes before, %d bytes after, %d bytes "
+                      + "reclaimed.", live.length - liveIds.size(),
+                      stored.size() - stored().size(), before, after,
+                      before - after);
+    }
+
+    /** Returns which rows of the CommitGraph hold live commits: those that
+     *  can be reached from the commits in HEADS or, unless CUTOFF is null,
+     *  from any commit made at or after CUTOFF, in milliseconds since the
+     *  epoch. Commit times are only accurate to within the time zone they
+     *  were made in, so a grace period of zero skips them altogether. */
+    private static boolean[] markCommits(Collection<ObjectId> heads,
+                                         Long cutoff) {
+        boolean[] live = new boolean[CommitGraph.size()];
+        ArrayList<Integer> work = new ArrayList<>();
+        for (ObjectId id : heads) {
+            work.add(CommitGraph.row(id));
+        }
+        for (int r = 0; cutoff != null && r < live.length; r += 1) {
+            if (CommitGraph.time(r) >= cutoff / MILLIS_PER_SECOND) {
+                work.add(r);
+            }
+        }
+        while (!work.isEmpty()) {
+            int r = work.remove(work.size() - 1);
+            if (r != CommitGraph.NONE && !live[r]) {
+                live[r] = true;
+                work.add(CommitGraph.parent(r));
+                work.add(CommitGraph.secondParent(r));
+            }
+        }
+        return live;
+    }
+
+    /** Returns the content ids of the objects used by the commits with
+     *  sha1s in COMMITS, along with STAGED. The commits are read in
+     *  parallel. */
+    private static Set<ObjectId> markObjects(List<ObjectId> commits,
+                                             Collection<ObjectId> staged) {
+        Set<ObjectId> result = ConcurrentHashMap.newKeySet();
+        result.addAll(staged);
+        commits.parallelStream().forEach(id -> {
+            Commit c = Commit.fromFile(id);
+            if (c.getTree() != null) {
+                FileTree.mark(c.getTree(), result);
+            } else if (c.getFiles() != null) {
+                result.addAll(c.getFiles().values());
+            }
+        });
+        return result;
+    }
+
+    /** Rewrites the commit pack to hold just the commits with sha1s in
+     *  IDS, whose rows of the CommitGraph are those marked in LIVE, moves
+     *  any loose commits among them into it, deletes the other loose
+     *  commits, and drops the others from the commit graph and message
+     *  indexes. */
+    private static void compactCommits(List<ObjectId> ids, boolean[] live) {
+        TreeMap<ObjectId, byte[]> commits = new TreeMap<>();
+        for (ObjectId id : ids) {
+            byte[] data = CommitPack.read(id);
+            if (data == null) {
+                data = Utils.readContents(Commit.looseFile(id));
+            }
+            commits.put(id, data);
+        }
+        CommitPack.rewrite(commits);
+        List<String> loose = Utils.plainFilenamesIn(Commit.COMMIT_FOLDER);
+        if (loose != null) {
+            for (String id : loose) {
+                new File(Commit.COMMIT_FOLDER, id).delete();
+            }
+        }
+        CommitGraph.retain(live);
+        MessageIndex.retain(new HashSet<>(ids));
+        CommitCache.clear();
+    }
+
+    /** Deletes every loose object and legacy blob whose content id is not
+     *  in LIVE and that was last modified before CUTOFF, in milliseconds
+     *  since the epoch, along with any temporary files left by interrupted
+     *  writes, and any fan-out folders left empty. */
+    private static void sweep(Set<ObjectId> live, long cutoff) {
+        File[] folders = ObjectStore.OBJECTS_FOLDER.listFiles();
+        if (folders != null) {
+            for (File folder : folders) {
+                if (folder.isDirectory() && isFanOut(folder.getName())) {
+                    for (File obj : folder.listFiles()) {
+                        String id = folder.getName() + obj.getName();
+                        if (!isLive(id, live)
+                            && obj.lastModified() < cutoff) {
+                            obj.delete();
+                        }
+                    }
+                    folder.delete();
+                } else if (folder.isFile() && folder.getName().endsWith(TMP)
+                           && folder.lastModified() < cutoff) {
+                    folder.delete();
+                }
+            }
+        }
+        List<String> blobs = Utils.plainFilenamesIn(Command.BLOBS_FOLDER);
+        if (blobs != null) {
+            for (String name : blobs) {
+                File blob = Utils.join(Command.BLOBS_FOLDER, name);
+                if (!live.contains(Utils.sha1Contents(blob))
+                    && blob.lastModified() < cutoff) {
+                    blob.delete();
+                }
+            }
+        }
+    }
+
+    /** Returns the content ids of every object stored, loose or packed. */
+    private static Set<ObjectId> stored() {
+        Set<ObjectId> result = new HashSet<>(BlobPack.ids());
+        File[] folders = ObjectStore.OBJECTS_FOLDER.listFiles();
+        if (folders != null) {
+            for (File folder : folders) {
+                if (folder.isDirectory() && isFanOut(folder.getName())) {
+                    for (String name : folder.list()) {
+                        String id = folder.getName() + name;
+                        if (ObjectId.isHex(id)) {
+                            result.add(ObjectId.fromHex(id));
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns true if ID, the name of a loose object, is the content id
+     *  of an object in LIVE. */
+    private static boolean isLive(String id, Set<ObjectId> live) {
+        return ObjectId.isHex(id) && live.contains(ObjectId.fromHex(id));
+    }
+
+    /** Returns true if NAME is the name of a fan-out folder of the
+     *  ObjectStore: two hexadecimal digits. */
+    private static boolean isFanOut(String name) {
+        return name.length() == 2 && Character.digit(name.charAt(0), 16) >= 0
+            && Character.digit(name.charAt(1), 16) >= 0;
+    }
+
+    /** Returns the total size in bytes of the files under FILE. */
+    private static long size(File file) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            return file.length();
+        }
+        long total = 0;
+        for (File child : children) {
+            total += size(child);
+        }
+        return total;
+    }
+
+    /** Milliseconds in a second. */
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    /** Suffix of the temporary files that objects are written to. */
+    private static final String TMP = ".tmp";
+
+}
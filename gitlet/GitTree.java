@@ -2,7 +2,12 @@ package gitlet;
 
 import java.util.ArrayList;
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Acts as the tree that connects separate branches. Makes necessary changes
@@ -21,6 +26,13 @@ public class GitTree implements Serializable {
         this.saveTree();
     }
 
+    /** Constructs the GitTree whose fields are read from IN. */
+    private GitTree(Codec.Reader in) {
+        _branches = in.strings();
+        _latestCommit = in.id();
+        _removed = in.strings();
+    }
+
     /**Adds a new commit NODE to an existing branch with NAME. */
     public void addToBranch(String name, Commit node) {
         Branch b = Branch.fromFile(name);
@@ -29,48 +41,47 @@ public class GitTree implements Serializable {
         this.saveTree();
     }
 
-    /** Adds a branch (a new pointer) with name NAME at commit NODE.
-     * * The ACTIVE branch is used to find the latest commit where the
-    * new pointer will diverge from. */
-    public void addBranch(String name, Commit node, Branch active) {
+    /** Adds a branch (a new pointer) with name NAME at commit with ID.
+     * Only the pointer is written, so this takes constant time regardless
+     * of the length of the history. */
+    public void addBranch(String name, ObjectId id) {
         if (this._branches.contains(name)) {
-            Utils.message("A branch with that name already exist.");
-            System.exit(0);
+            throw Utils.error("A branch with that name already exist.");
         } else {
-            Branch newBranch = new Branch(name, node, active);
+            Branch newBranch = new Branch(name, id);
             _branches.add(name);
             this.saveTree();
         }
     }
 
-    /** Adds a branch (a new pointer) with name NAME at commit with ID.
-     * The ACTIVE branch is used to find the latest commit where the
-     * new pointer will diverge from. */
-    public void addBranch(String name, String id, Branch active) {
-        addBranch(name, Commit.fromFile(id), active);
-    }
-
     /**Sets the active branch to branch with BRANCHNAME where
      * commits will be added moving forward. */
     public void setActive(String branchName) {
         File activeBranch = Utils.join(Command.GITLET_FOLDER, "active");
-        Utils.writeContents(activeBranch, branchName);
+        Transaction.write(activeBranch,
+                          branchName.getBytes(StandardCharsets.UTF_8));
     }
 
-    /** Serializes and saves GitTree object to a file.*/
+    /** Encodes and saves GitTree object to a file.*/
     public void saveTree() {
         File tree = Utils.join(".gitlet", "tree");
-        Utils.writeObject(tree, this);
+        Transaction.write(tree, new Codec.Writer().strings(_branches)
+                          .id(_latestCommit).strings(_removed)
+                          .toByteArray());
     }
 
     /**Returns the GitTree object that represents the objects in the
      * Gitlet version-control system.*/
     public static GitTree fromFile() {
         File tree = new File(".gitlet/tree");
-        if (!tree.exists()) {
+        if (!Transaction.exists(tree)) {
             throw new GitletException("Tree not created.");
         }
-        return Utils.readObject(tree, GitTree.class);
+        byte[] data = Transaction.read(tree);
+        if (Codec.isSerialized(data)) {
+            return Utils.deserialize(data, GitTree.class);
+        }
+        return new GitTree(new Codec.Reader(data));
     }
 
     /** Checks if a branch with NAME already exists. Returns TRUE if
@@ -92,59 +103,11 @@ public class GitTree implements Serializable {
     }
 
     /** Finds the latest common ancestor of two branches, CURR and GIVEN,
-     * to be used in merge and returns the sha1 of the commit. */
-    public String findSplit(Branch curr, Branch given) {
-        String currHC = curr.getHead(), givenHC = given.getHead();
-        Commit currComm = Commit.fromFile(currHC);
-        Commit givenComm = Commit.fromFile(givenHC);
-        String split1 = currHC, split2 = givenHC;
-        int d1 = 0, d2 = 0;
-        if (!given.containsCommit(currHC)) {
-            boolean found = false;
-            while (!found) {
-                String[] parents = currComm.getParent();
-                d1++;
-                if (given.containsCommit(parents[0])) {
-                    split1 = parents[0];
-                    found = true;
-                }
-                if (parents.length > 1) {
-                    if (given.containsCommit(parents[1])) {
-                        split1 = parents[1];
-                        found = true;
-                    }
-                }
-                currComm = Commit.fromFile(parents[0]);
-            }
-        }
-        if (!curr.containsCommit(givenHC)) {
-            boolean found = false;
-            while (!found) {
-                String[] parents = givenComm.getParent();
-                if (curr.containsCommit(parents[0])) {
-                    split2 = parents[0];
-                    found = true;
-                }
-                if (parents.length > 1) {
-                    if (curr.containsCommit(parents[1])) {
-                        split2 = parents[1];
-                        found = true;
-                    }
-                }
-                givenComm = Commit.fromFile(parents[0]);
-            }
-        }
-        Commit curB = Commit.fromFile(currHC);
-        while (!split2.equals(currHC)) {
-            d2++;
-            currHC = curB.getParent()[0];
-            curB = Commit.fromFile(currHC);
-        }
-        if (d2 < d1) {
-            return split2;
-        } else {
-            return split1;
-        }
+     * to be used in merge and returns the sha1 of the commit. When there
+     * are several best common ancestors, as in criss-cross histories, the
+     * one closest to the head of CURR is used. */
+    public ObjectId findSplit(Branch curr, Branch given) {
+        return MergeBase.best(curr.getHead(), given.getHead());
     }
 
     /**Returns a list of the name of branches. */
@@ -153,29 +116,25 @@ public class GitTree implements Serializable {
     }
 
     /**Returns the most recent commit made. */
-    public String getLatestCommit() {
+    public ObjectId getLatestCommit() {
         return _latestCommit;
     }
 
     /** Returns the sha1 of the commit that the master pointer
      * is pointing to. */
-    public String getMaster() {
+    public ObjectId getMaster() {
         Branch master = Branch.fromFile("master");
         return master.getHead();
     }
 
-    /** Returns the list of files that have been removed. */
+    /** Returns the list of files staged for removal by an earlier version
+     * of Gitlet, which kept them here rather than in the StagingIndex. */
     public ArrayList<String> getRemoved() {
         return _removed;
     }
 
-    /** Adds FILENAME to _removed. */
-    public void addRemoved(String filename) {
-        _removed.add(filename);
-        this.saveTree();
-    }
-
-    /** Clear _removed. */
+    /** Clears the files staged for removal by an earlier version of
+     * Gitlet, once the StagingIndex holds them. */
     public void clearRemoved() {
         _removed.clear();
         this.saveTree();
@@ -183,20 +142,55 @@ public class GitTree implements Serializable {
 
     /** Takes in the commit id COMMITID and sets the value of the
      * latest commit.*/
-    public void setLatestCommit(String commitID) {
+    public void setLatestCommit(ObjectId commitID) {
         _latestCommit = commitID;
         this.saveTree();
     }
 
+    /** Reads the fields of a tree serialized by an earlier version of
+     * Gitlet from IN, in the form described by serialPersistentFields. */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        _branches = (ArrayList<String>) fields.get("_branches", null);
+        String latest = (String) fields.get("_latestCommit", null);
+        _latestCommit = latest == null ? null : ObjectId.fromHex(latest);
+        _removed = (ArrayList<String>) fields.get("_removed", null);
+    }
+
+    /** Writes this tree to OUT in the form that readObject reads. */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("_branches", _branches);
+        fields.put("_latestCommit",
+                   _latestCommit == null ? null : _latestCommit.toHex());
+        fields.put("_removed", _removed);
+        out.writeFields();
+    }
+
     /**Contains the list of branch names as contained in the BRANCHES folder.*/
     private ArrayList<String> _branches = new ArrayList<>();
 
 
     /** The most recent commit made. */
-    private String _latestCommit;
+    private ObjectId _latestCommit;
 
 
-    /** List of files that need to be removed in the next commit. */
+    /** Files staged for removal by earlier versions of Gitlet. New
+     * removals are kept in the StagingIndex. */
     private ArrayList<String> _removed = new ArrayList<>();
 
+    /** Fixed so that trees written by earlier versions of Gitlet can still
+     * be read after methods of this class change. */
+    private static final long serialVersionUID = 4981147327830387772L;
+
+    /** The fields of the Java serialization of a tree, as earlier versions
+     * of Gitlet wrote it, with the latest commit held as a String. */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("_branches", ArrayList.class),
+        new ObjectStreamField("_latestCommit", String.class),
+        new ObjectStreamField("_removed", ArrayList.class),
+    };
+
 }
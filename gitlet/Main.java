@@ -9,7 +9,42 @@ public class Main {
     /** Usage: java gitlet.Main ARGS, where ARGS is a String array that contains
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) throws IOException {
+        run(args);
+        System.exit(0);
+    }
+
+    /** Runs the command given by ARGS, printing the message of the
+     *  GitletException that stops it, if any. Used by main and, for each
+     *  request, by the Daemon. */
+    static void run(String... args) throws IOException {
+        try {
+            dispatch(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    /** Runs the command given by ARGS as one Transaction. The changes it
+     *  made are saved once it ends, even if it stops with a
+     *  GitletException, since those are raised only after any changes it
+     *  means to keep; any other failure discards them. */
+    private static void dispatch(String... args) throws IOException {
         Command curr = new Command(args);
+        Transaction.begin();
+        try {
+            execute(curr);
+        } catch (GitletException excp) {
+            curr.finish();
+            throw excp;
+        } catch (IOException | RuntimeException excp) {
+            Transaction.abort();
+            throw excp;
+        }
+        curr.finish();
+    }
+
+    /** Runs the command CURR. */
+    private static void execute(Command curr) throws IOException {
         String cmd = curr.getCommand();
         if (cmd.equals("init")) {
             checkOperands(curr.getRest(), 0);
@@ -31,8 +66,9 @@ public class Main {
         } else if (cmd.equals("global-log")) {
             curr.globalLog();
         } else if (cmd.equals("find")) {
-            checkOperands(curr.getRest(), 1);
             curr.find();
+        } else if (cmd.equals("diff")) {
+            curr.diff();
         } else if (cmd.equals("branch")) {
             curr.newBranch();
         } else if (cmd.equals("rm-branch")) {
@@ -44,10 +80,19 @@ public class Main {
         } else if (cmd.equals("merge")) {
             checkOperands(curr.getRest(), 1);
             curr.merge();
+        } else if (cmd.equals("pack-commits")) {
+            curr.packCommits();
+        } else if (cmd.equals("migrate-blobs")) {
+            curr.migrateBlobs();
+        } else if (cmd.equals("repack")) {
+            curr.repack();
+        } else if (cmd.equals("gc")) {
+            curr.gc();
+        } else if (cmd.equals("daemon")) {
+            curr.daemon();
         } else {
             System.out.println("No command with that name exists.");
         }
-        System.exit(0);
     }
 
 
@@ -60,16 +105,14 @@ public class Main {
     /** Returns error and exits if size of REST does not match SIZE. */
     public static void checkOperands(String[] rest, int size) {
         if (rest.length != size) {
-            Utils.message("Incorrect operands.");
-            System.exit(0);
+            throw Utils.error("Incorrect operands.");
         }
     }
 
     /** Returns error and exits if the size of REST is equal to SIZE. */
     public static void hasOperands(String[] rest, int size) {
         if (rest.length == 0) {
-            Utils.message("Incorrect operands.");
-            System.exit(0);
+            throw Utils.error("Incorrect operands.");
         }
     }
 
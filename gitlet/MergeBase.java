@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** Finds the best common ancestors of two commits. Both heads are walked
+ * at once through the commit graph, highest generation number first, and
+ * every commit reached is marked with the side(s) it was reached from.
+ * A commit reached from both sides is a common ancestor, and everything
+ * below it is marked stale so it is not reported again. The walk stops as
+ * soon as only stale commits remain, so each commit is visited at most
+ * once and no commit is ever deserialized.
+ * @author Divya Sivanandan */
+class MergeBase {
+
+    /** Mark for commits reachable from the first head. */
+    private static final int PARENT1 = 1;
+
+    /** Mark for commits reachable from the second head. */
+    private static final int PARENT2 = 2;
+
+    /** Mark for commits below a common ancestor already found. */
+    private static final int STALE = 4;
+
+    /** Mark for commits already added to the result. */
+    private static final int RESULT = 8;
+
+    /** Orders graph rows by decreasing generation number, then decreasing
+     *  commit time, so that descendants are always visited before their
+     *  ancestors. */
+    private static final Comparator<Integer> NEWEST_FIRST =
+        Comparator.comparingInt((Integer r) -> -CommitGraph.generation(r))
+        .thenComparingLong(r -> -CommitGraph.time(r));
+
+    /** Returns the sha1s of the best common ancestors of the commits with
+     *  sha1s A and B: the common ancestors that are not ancestors of any
+     *  other common ancestor. The result is ordered newest first, and has
+     *  more than one element only for criss-cross histories. */
+    static List<ObjectId> all(ObjectId a, ObjectId b) {
+        int ra = CommitGraph.row(a), rb = CommitGraph.row(b);
+        List<ObjectId> result = new ArrayList<>();
+        if (ra == rb) {
+            result.add(a);
+            return result;
+        }
+        List<Integer> common = paintDownToCommon(ra, rb);
+        common.sort(NEWEST_FIRST);
+        for (int i = 0; i < common.size(); i += 1) {
+            boolean redundant = false;
+            for (int j = 0; j < i && !redundant; j += 1) {
+                redundant = isAncestor(common.get(i), common.get(j));
+            }
+            if (!redundant) {
+                result.add(CommitGraph.id(common.get(i)));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the sha1 of the best common ancestor of the commits with
+     *  sha1s A and B. When there are several, returns the one closest to A
+     *  by the shortest path through parents. */
+    static ObjectId best(ObjectId a, ObjectId b) {
+        List<ObjectId> bases = all(a, b);
+        if (bases.size() == 1) {
+            return bases.get(0);
+        }
+        HashSet<Integer> candidates = new HashSet<>();
+        for (ObjectId id : bases) {
+            candidates.add(CommitGraph.row(id));
+        }
+        HashSet<Integer> seen = new HashSet<>();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(CommitGraph.row(a));
+        while (true) {
+            int r = queue.poll();
+            if (candidates.contains(r)) {
+                return CommitGraph.id(r);
+            }
+            for (int p : new int[] {CommitGraph.parent(r),
+                                    CommitGraph.secondParent(r)}) {
+                if (p != CommitGraph.NONE && seen.add(p)) {
+                    queue.add(p);
+                }
+            }
+        }
+    }
+
+    /** Returns the rows of the common ancestors of rows A and B that were
+     *  reached before becoming stale. */
+    private static List<Integer> paintDownToCommon(int a, int b) {
+        HashMap<Integer, Integer> marks = new HashMap<>();
+        PriorityQueue<Entry> queue =
+            new PriorityQueue<>((x, y) -> NEWEST_FIRST.compare(x.row, y.row));
+        List<Integer> result = new ArrayList<>();
+        marks.put(a, PARENT1);
+        marks.put(b, PARENT2);
+        queue.add(new Entry(a, false));
+        queue.add(new Entry(b, false));
+        int active = 2;
+        while (active > 0) {
+            Entry e = queue.poll();
+            if (!e.stale) {
+                active -= 1;
+            }
+            int mark = marks.get(e.row);
+            int flags = mark & (PARENT1 | PARENT2 | STALE);
+            if ((flags & (PARENT1 | PARENT2)) == (PARENT1 | PARENT2)) {
+                if ((mark & RESULT) == 0) {
+                    marks.put(e.row, mark | RESULT);
+                    result.add(e.row);
+                }
+                flags |= STALE;
+            }
+            int[] parents = {CommitGraph.parent(e.row),
+                             CommitGraph.secondParent(e.row)};
+            for (int p : parents) {
+                if (p == CommitGraph.NONE) {
+                    continue;
+                }
+                int old = marks.getOrDefault(p, 0);
+                if ((old & flags) == flags) {
+                    continue;
+                }
+                marks.put(p, old | flags);
+                boolean stale = (flags & STALE) != 0;
+                queue.add(new Entry(p, stale));
+                if (!stale) {
+                    active += 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns true if row ANCESTOR is reachable from row DESCENDANT. */
+    private static boolean isAncestor(int ancestor, int descendant) {
+        return CommitGraph.isAncestor(CommitGraph.id(ancestor),
+                                      CommitGraph.id(descendant));
+    }
+
+    /** A commit waiting in the walk's queue. */
+    private static class Entry {
+        /** An entry for ROW, which is STALE if it was queued only to
+         *  propagate the stale mark. */
+        Entry(int row, boolean stale) {
+            this.row = row;
+            this.stale = stale;
+        }
+
+        /** The graph row of the commit. */
+        private final int row;
+
+        /** True if this entry only propagates the stale mark. */
+        private final boolean stale;
+    }
+
+}
@@ -0,0 +1,290 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/** Append-only indexes from commit messages, and from the words in them,
+ * to the commits that have them, so that find never has to read every
+ * commit in the repository. Each index is a file of fixed-width records,
+ * each holding a 64-bit hash of a message or word and the raw sha1 of a
+ * commit. A record is appended for every commit as it is saved. The
+ * records are read into a table keyed by hash the first time an index is
+ * used, and only records appended since are read after that, so a lookup
+ * takes time proportional to the number of matches. Since different
+ * messages may share a hash, callers check the messages of the commits
+ * returned.
+ *
+ * Repositories written by earlier versions of Gitlet have no indexes;
+ * both are built from every commit the first time either is needed.
+ * @author Divya Sivanandan */
+class MessageIndex {
+
+    /** The index of whole commit messages. */
+    static final File MESSAGE_FILE = Utils.join(CommitPack.PACK_FOLDER,
+                                                "messages.idx");
+
+    /** The index of the words in commit messages. */
+    static final File WORD_FILE = Utils.join(CommitPack.PACK_FOLDER,
+                                             "words.idx");
+
+    /** Size in bytes of a record: hash and sha1. */
+    static final int RECORD_SIZE = Long.BYTES + ObjectId.SIZE;
+
+    /** Adds the message of commit C, and the words in it, to the indexes,
+     *  building them first if this repository has none. */
+    static void add(Commit c) {
+        if (!MESSAGE_FILE.exists() || !WORD_FILE.exists()) {
+            build();
+            return;
+        }
+        append(MESSAGE_FILE, Collections.singleton(c.getMessage()),
+               c.getHash());
+        append(WORD_FILE, words(c.getMessage()), c.getHash());
+    }
+
+    /** Returns the ids of the commits whose message may be MSG, in
+     *  sorted order. */
+    static List<ObjectId> withMessage(String msg) {
+        if (!MESSAGE_FILE.exists()) {
+            build();
+        }
+        MESSAGES.load(MESSAGE_FILE);
+        return MESSAGES.get(hash(msg));
+    }
+
+    /** Returns the ids of the commits whose message may contain WORD, in
+     *  sorted order. */
+    static List<ObjectId> withWord(String word) {
+        if (!WORD_FILE.exists()) {
+            build();
+        }
+        WORDS.load(WORD_FILE);
+        return WORDS.get(hash(word.toLowerCase(Locale.ROOT)));
+    }
+
+    /** Returns the distinct words of MSG, in lower case, in the order they
+     *  first appear. A word is a maximal run of letters and digits. */
+    static Set<String> words(String msg) {
+        Set<String> result = new LinkedHashSet<>();
+        for (String w : msg.toLowerCase(Locale.ROOT).split(WORD_BREAK)) {
+            if (!w.isEmpty()) {
+                result.add(w);
+            }
+        }
+        return result;
+    }
+
+    /** Forgets the records read from either index if it has been rewritten
+     *  since, by this process or another, so that the next lookup reads it
+     *  afresh. */
+    static void refresh() {
+        MESSAGES.refresh(MESSAGE_FILE);
+        WORDS.refresh(WORD_FILE);
+    }
+
+    /** Rewrites both indexes, if they exist, keeping only the records of
+     *  the commits whose sha1s are in LIVE. Each is written to a temporary
+     *  file and synced before it is renamed into place, so that a crash
+     *  leaves either the old index or the new one. */
+    static void retain(Set<ObjectId> live) {
+        for (File file : new File[] {MESSAGE_FILE, WORD_FILE}) {
+            if (file.exists()) {
+                ByteBuffer records = Utils.map(file);
+                ByteBuffer kept = ByteBuffer.allocate(records.capacity());
+                byte[] raw = new byte[ObjectId.SIZE];
+                while (records.remaining() >= RECORD_SIZE) {
+                    long hash = records.getLong();
+                    records.get(raw);
+                    if (live.contains(ObjectId.of(raw, 0))) {
+                        kept.putLong(hash).put(raw);
+                    }
+                }
+                replace(file, bytes(kept));
+            }
+        }
+        MESSAGES.clear();
+        WORDS.clear();
+    }
+
+    /** Replaces the contents of FILE with DATA by writing them to a
+     *  temporary file, syncing it, and renaming it over FILE. */
+    private static void replace(File file, byte[] data) {
+        try {
+            File tmp = File.createTempFile("idx", null, file.getParentFile());
+            Utils.writeContents(tmp, data);
+            Transaction.force(tmp);
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Could not update %s.", file.getName());
+        }
+    }
+
+    /** Writes both indexes afresh from every commit in the repository. */
+    private static void build() {
+        ByteBuffer messages = ByteBuffer.allocate(RECORD_SIZE);
+        ByteBuffer words = ByteBuffer.allocate(RECORD_SIZE);
+        for (ObjectId id : Commit.ids()) {
+            Commit c = Commit.fromFile(id);
+            messages = put(messages, hash(c.getMessage()), id);
+            for (String w : words(c.getMessage())) {
+                words = put(words, hash(w), id);
+            }
+        }
+        CommitPack.PACK_FOLDER.mkdir();
+        Utils.writeContents(MESSAGE_FILE, bytes(messages));
+        Utils.writeContents(WORD_FILE, bytes(words));
+        Transaction.written(MESSAGE_FILE);
+        Transaction.written(WORD_FILE);
+    }
+
+    /** Appends a record for each of KEYS and the commit ID to the index
+     *  FILE. */
+    private static void append(File file, Set<String> keys, ObjectId id) {
+        ByteBuffer records = ByteBuffer.allocate(keys.size() * RECORD_SIZE);
+        for (String key : keys) {
+            records = put(records, hash(key), id);
+        }
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write(bytes(records));
+        } catch (IOException excp) {
+            throw Utils.error("Could not update %s.", file.getName());
+        }
+        Transaction.written(file);
+    }
+
+    /** Puts a record of HASH and ID into BUF, which is replaced by a buffer
+     *  twice the size if it is full. Returns the buffer written to. */
+    private static ByteBuffer put(ByteBuffer buf, long hash, ObjectId id) {
+        if (buf.remaining() < RECORD_SIZE) {
+            ByteBuffer bigger = ByteBuffer.allocate(2 * buf.capacity()
+                                                    + RECORD_SIZE);
+            buf.flip();
+            buf = bigger.put(buf);
+        }
+        byte[] raw = new byte[ObjectId.SIZE];
+        id.copyTo(raw, 0);
+        return buf.putLong(hash).put(raw);
+    }
+
+    /** Returns the bytes put into BUF so far. */
+    private static byte[] bytes(ByteBuffer buf) {
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    /** Returns the 64-bit FNV-1a hash of the UTF-8 encoding of S. */
+    static long hash(String s) {
+        long h = FNV_OFFSET;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /** The records of one index file, by hash. */
+    private static class Table {
+
+        /** Reads the records that have been appended to FILE since it was
+         *  last loaded, or all of them if FILE has been rewritten. */
+        void load(File file) {
+            refresh(file);
+            if (file.length() == _loaded) {
+                return;
+            }
+            ByteBuffer records = Utils.map(file);
+            byte[] raw = new byte[ObjectId.SIZE];
+            records.position((int) _loaded);
+            while (records.remaining() >= RECORD_SIZE) {
+                long hash = records.getLong();
+                records.get(raw);
+                _ids.computeIfAbsent(hash, h -> new ArrayList<>(1))
+                    .add(ObjectId.of(raw, 0));
+            }
+            _loaded = records.position();
+            _key = key(file);
+        }
+
+        /** Forgets the records read so far if FILE is no longer the file
+         *  they were read from, or has been cut short. */
+        void refresh(File file) {
+            if (_loaded > 0
+                && (file.length() < _loaded || !key(file).equals(_key))) {
+                clear();
+            }
+        }
+
+        /** Forgets every record read so far. */
+        void clear() {
+            _ids.clear();
+            _loaded = 0;
+            _key = null;
+        }
+
+        /** Returns the object that identifies FILE on its file system,
+         *  which changes when another file is renamed over it, or its
+         *  path if the file system has none. */
+        private Object key(File file) {
+            try {
+                Object key = Files.readAttributes(file.toPath(),
+                                                  BasicFileAttributes.class)
+                    .fileKey();
+                return key == null ? file.getPath() : key;
+            } catch (IOException excp) {
+                return file.getPath();
+            }
+        }
+
+        /** Returns the ids of the commits recorded under HASH, in sorted
+         *  order and without repeats. */
+        List<ObjectId> get(long hash) {
+            List<ObjectId> ids = _ids.get(hash);
+            if (ids == null) {
+                return new ArrayList<>();
+            }
+            return ids.stream().distinct().sorted()
+                .collect(Collectors.toList());
+        }
+
+        /** The commits recorded under each hash, in the order recorded. */
+        private final HashMap<Long, List<ObjectId>> _ids = new HashMap<>();
+
+        /** Number of bytes of the file that have been read into _ids. */
+        private long _loaded;
+
+        /** The key of the file the records in _ids were read from, or null
+         *  if none have been. */
+        private Object _key;
+    }
+
+    /** Pattern matching the characters between words. */
+    private static final String WORD_BREAK = "[^\\p{L}\\p{N}]+";
+
+    /** The FNV-1a offset basis. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    /** The FNV-1a prime. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** The loaded records of MESSAGE_FILE. */
+    private static final Table MESSAGES = new Table();
+
+    /** The loaded records of WORD_FILE. */
+    private static final Table WORDS = new Table();
+
+}
@@ -0,0 +1,207 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** The sha1 of a commit or of file contents, held as its 20 raw bytes
+ * rather than as a 40-character String. An ObjectId takes well under half
+ * the memory of the equivalent String, and compares and hashes without
+ * looking at characters, which makes it the better key for tables that
+ * hold every commit in the repository. Ordering is the same as the
+ * ordering of the hexadecimal numerals.
+ * @author Divya Sivanandan */
+final class ObjectId implements Comparable<ObjectId> {
+
+    /** Number of bytes in a sha1. */
+    static final int SIZE = 20;
+
+    /** Hexadecimal digits by value. */
+    private static final byte[] DIGITS =
+        "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    /** Values of the ASCII characters as lower-case hexadecimal digits, or
+     *  -1 for characters that are not digits. */
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int d = 0; d < DIGITS.length; d += 1) {
+            VALUES[DIGITS[d]] = (byte) d;
+        }
+    }
+
+    /** Returns the id whose raw bytes are the SIZE bytes of B starting at
+     *  AT. */
+    static ObjectId of(byte[] b, int at) {
+        ByteBuffer buf = ByteBuffer.wrap(b, at, SIZE);
+        return new ObjectId(buf.getLong(), buf.getLong(), buf.getInt());
+    }
+
+    /** Returns the id written as the lower-case hexadecimal numeral HEX.
+     *  Throws IllegalArgumentException if HEX is not one. */
+    static ObjectId fromHex(CharSequence hex) {
+        if (!isHex(hex)) {
+            throw new IllegalArgumentException("not a sha1: " + hex);
+        }
+        return new ObjectId(parse(hex, 0, 16), parse(hex, 16, 16),
+                            (int) parse(hex, 32, 8));
+    }
+
+    /** Returns the id written as a hexadecimal numeral in the 40 ASCII
+     *  bytes of BUF starting at AT. */
+    static ObjectId fromAscii(ByteBuffer buf, int at) {
+        return new ObjectId(parse(buf, at, 16), parse(buf, at + 16, 16),
+                            (int) parse(buf, at + 32, 8));
+    }
+
+    /** Returns true if S is a complete sha1 written as a lower-case
+     *  hexadecimal numeral. */
+    static boolean isHex(CharSequence s) {
+        if (s.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < Utils.UID_LENGTH; i += 1) {
+            if (digit(s.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the SIZE bytes of B starting at AT as a lower-case
+     *  hexadecimal numeral. */
+    static String toHex(byte[] b, int at) {
+        return new String(ascii(b, at), StandardCharsets.ISO_8859_1);
+    }
+
+    /** If S is a complete sha1 written as a lower-case hexadecimal
+     *  numeral, writes its SIZE raw bytes to DEST starting at AT and
+     *  returns true. Otherwise returns false, and the bytes of DEST from AT
+     *  on may have been overwritten. */
+    static boolean parseHex(String s, byte[] dest, int at) {
+        if (s.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < SIZE; i += 1) {
+            char c1 = s.charAt(2 * i), c2 = s.charAt(2 * i + 1);
+            if ((c1 | c2) >= VALUES.length) {
+                return false;
+            }
+            int hi = VALUES[c1], lo = VALUES[c2];
+            if ((hi | lo) < 0) {
+                return false;
+            }
+            dest[at + i] = (byte) ((hi << 4) | lo);
+        }
+        return true;
+    }
+
+    /** Writes the raw bytes of this id to DEST starting at AT. */
+    void copyTo(byte[] dest, int at) {
+        ByteBuffer.wrap(dest, at, SIZE).putLong(_w0).putLong(_w1).putInt(_w2);
+    }
+
+    /** Returns this id as a lower-case hexadecimal numeral. */
+    String toHex() {
+        return new String(toAscii(), StandardCharsets.ISO_8859_1);
+    }
+
+    /** Returns this id as the ASCII bytes of a lower-case hexadecimal
+     *  numeral, the form in which the pack indexes and the commit graph
+     *  hold it. */
+    byte[] toAscii() {
+        byte[] b = new byte[SIZE];
+        copyTo(b, 0);
+        return ascii(b, 0);
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return _w0 == other._w0 && _w1 == other._w1 && _w2 == other._w2;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (_w0 >>> 32);
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int c = Long.compareUnsigned(_w0, other._w0);
+        if (c == 0) {
+            c = Long.compareUnsigned(_w1, other._w1);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(_w2, other._w2);
+        }
+        return c;
+    }
+
+    /** The id whose raw bytes are W0, W1 and W2, most significant first. */
+    private ObjectId(long w0, long w1, int w2) {
+        _w0 = w0;
+        _w1 = w1;
+        _w2 = w2;
+    }
+
+    /** Returns the ASCII bytes of the lower-case hexadecimal numeral for
+     *  the SIZE bytes of B starting at AT. */
+    private static byte[] ascii(byte[] b, int at) {
+        byte[] result = new byte[2 * SIZE];
+        for (int i = 0; i < SIZE; i += 1) {
+            result[2 * i] = DIGITS[(b[at + i] >> 4) & 0xf];
+            result[2 * i + 1] = DIGITS[b[at + i] & 0xf];
+        }
+        return result;
+    }
+
+    /** Returns the value of the LEN hexadecimal digits of S starting at
+     *  AT. */
+    private static long parse(CharSequence s, int at, int len) {
+        long result = 0;
+        for (int i = at; i < at + len; i += 1) {
+            result = (result << 4) | digit(s.charAt(i));
+        }
+        return result;
+    }
+
+    /** Returns the value of the LEN hexadecimal digits in the ASCII bytes
+     *  of BUF starting at AT. */
+    private static long parse(ByteBuffer buf, int at, int len) {
+        long result = 0;
+        for (int i = at; i < at + len; i += 1) {
+            int d = digit((char) buf.get(i));
+            if (d < 0) {
+                throw new IllegalArgumentException("not a sha1");
+            }
+            result = (result << 4) | d;
+        }
+        return result;
+    }
+
+    /** Returns the value of the lower-case hexadecimal digit C, or -1 if C
+     *  is not one. */
+    private static int digit(char c) {
+        return c < VALUES.length ? VALUES[c] : -1;
+    }
+
+    /** The first eight raw bytes. */
+    private final long _w0;
+
+    /** The next eight raw bytes. */
+    private final long _w1;
+
+    /** The last four raw bytes. */
+    private final int _w2;
+
+}
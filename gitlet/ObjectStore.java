@@ -0,0 +1,295 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** A content-addressed store for file contents. Each distinct content is
+ * stored once, deflated, in a file named by the full sha1 of the content,
+ * under a fan-out subdirectory named by the first two characters of the
+ * sha1. Commits and the staging area refer to contents by these ids, so
+ * identical files under different paths share a single object.
+ *
+ * Commits written by earlier versions refer to contents by blob name (the
+ * first five characters of the content's sha1 followed by the file name)
+ * and keep them uncompressed in the BLOBS folder. Such references are
+ * turned into content ids by contentId() as they are read, both before
+ * and after migrate() moves the blobs into the store, so everything else
+ * deals only in content ids. A blob read before it is migrated is stored
+ * under its content id as it is read, since new commits and the staging
+ * index may go on to refer to it by that id.
+ *
+ * Objects that BlobPack.repack() has moved into the pack are read from
+ * there when there is no loose object with the same id. The FileTree
+ * objects that hold the files of commits are stored here too.
+ * @author Divya Sivanandan */
+class ObjectStore {
+
+    /** Folder that contains the objects. */
+    static final File OBJECTS_FOLDER = Utils.join(".gitlet", "OBJECTS");
+
+    /** Maps the blob names of migrated legacy blobs to content ids. */
+    static final File LEGACY_FILE = Utils.join(OBJECTS_FOLDER, "legacy");
+
+    /** Stores the contents of FILE, unless an object with the same contents
+     *  is already stored, in which case it is freshened instead, and
+     *  returns the content id. FILE is read once, being hashed as it is
+     *  deflated into a temporary file, so the id is always that of the
+     *  bytes stored. May be called from several threads at once. */
+    static ObjectId put(File file) {
+        MessageDigest md = Utils.digest();
+        File tmp;
+        try (InputStream in = new DigestInputStream(
+                 Files.newInputStream(file.toPath()), md)) {
+            tmp = deflate(in);
+        } catch (IOException excp) {
+            throw Utils.error("Could not read %s.", file.getName());
+        }
+        ObjectId id = ObjectId.of(md.digest(), 0);
+        if (freshen(id)) {
+            tmp.delete();
+        } else {
+            try {
+                install(tmp, objectFile(id));
+            } catch (IOException excp) {
+                throw Utils.error("Could not write object %s.", id);
+            }
+        }
+        return id;
+    }
+
+    /** Stores DATA, unless an object with the same contents is already
+     *  stored, in which case it is freshened instead, and returns its
+     *  content id. */
+    static ObjectId put(byte[] data) {
+        ObjectId id = Utils.sha1Id(data);
+        if (!freshen(id)) {
+            try {
+                write(new ByteArrayInputStream(data), objectFile(id));
+            } catch (IOException excp) {
+                throw Utils.error("Could not write object %s.", id);
+            }
+        }
+        return id;
+    }
+
+    /** Returns the contents with content id ID. */
+    static byte[] read(ObjectId id) {
+        try (InputStream in = open(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw Utils.error("Could not read object %s.", id);
+        }
+    }
+
+    /** Writes the contents with content id ID to DEST, creating or
+     *  overwriting it. */
+    static void copyTo(ObjectId id, File dest) {
+        try (InputStream in = open(id);
+             OutputStream out = Files.newOutputStream(dest.toPath())) {
+            in.transferTo(out);
+        } catch (IOException excp) {
+            throw Utils.error("Could not write %s.", dest.getName());
+        }
+    }
+
+    /** Returns the contents with content id ID as a String. */
+    static String readString(ObjectId id) {
+        return new String(read(id), StandardCharsets.UTF_8);
+    }
+
+    /** Returns a stream of the uncompressed contents with content id ID,
+     *  which are read from a loose object or the blob pack. */
+    static InputStream open(ObjectId id) throws IOException {
+        File obj = objectFile(id);
+        if (obj.length() > 0) {
+            return new InflaterInputStream(Files.newInputStream(
+                obj.toPath()));
+        } else if (BlobPack.contains(id)) {
+            return BlobPack.open(id);
+        }
+        throw Utils.error("Missing object %s.", id);
+    }
+
+    /** Returns true if the contents with content id ID are stored, either
+     *  as a loose object or in the blob pack. A deflated object is never
+     *  empty, so an empty loose object, which a crash may leave behind, is
+     *  taken to be missing and is written again by the next put. */
+    static boolean exists(ObjectId id) {
+        return objectFile(id).length() > 0 || BlobPack.contains(id);
+    }
+
+    /** Writes the packed contents with content id ID out as a loose object
+     *  last modified at TIME, in milliseconds since the epoch, unless there
+     *  is a loose object for them already. */
+    static void loosen(ObjectId id, long time) {
+        File obj = objectFile(id);
+        if (obj.length() == 0) {
+            try (InputStream in = BlobPack.open(id)) {
+                write(in, obj);
+            } catch (IOException excp) {
+                throw Utils.error("Could not write object %s.", id);
+            }
+        }
+        obj.setLastModified(time);
+    }
+
+    /** Moves every legacy blob in the BLOBS folder into the store,
+     *  recording the content id of each blob name. The map is written
+     *  through the Transaction, which makes it durable before it deletes
+     *  the blobs, so a crash can never leave a blob name that resolves to
+     *  nothing. Prints how much space the blobs took before and after,
+     *  counting each distinct content once however many blobs hold it. */
+    static void migrate() {
+        List<String> blobs = Utils.plainFilenamesIn(Command.BLOBS_FOLDER);
+        HashMap<String, ObjectId> legacy = legacy();
+        HashSet<ObjectId> stored = new HashSet<>();
+        long before = 0, after = 0;
+        if (blobs != null) {
+            for (String name : blobs) {
+                File blob = Utils.join(Command.BLOBS_FOLDER, name);
+                before += blob.length();
+                ObjectId id = put(blob);
+                legacy.put(name, id);
+                if (stored.add(id)) {
+                    after += objectFile(id).length();
+                }
+            }
+            Transaction.write(LEGACY_FILE,
+                              new Codec.Writer().refs(legacy).toByteArray());
+            for (String name : blobs) {
+                Transaction.delete(Utils.join(Command.BLOBS_FOLDER, name));
+            }
+        }
+        int count = blobs == null ? 0 : blobs.size();
+        Utils.message("Migrated %d blobs: %d bytes before, %d bytes after, "
+                      + "%d bytes saved.", count, before, after,
+                      before - after);
+    }
+
+    /** Returns the content id of the contents referred to by REF, as it
+     *  was written by this or an earlier version of Gitlet: either a
+     *  content id, or a legacy blob name. A migrated blob is looked up in
+     *  the map that migrate() saved; one still in the BLOBS folder is
+     *  hashed and stored, once per process. Throws GitletException if REF
+     *  is a blob name that is in neither. May be called from several
+     *  threads at once. */
+    static ObjectId contentId(String ref) {
+        if (ObjectId.isHex(ref)) {
+            return ObjectId.fromHex(ref);
+        }
+        ObjectId migrated = legacy().get(ref);
+        if (migrated != null) {
+            return migrated;
+        }
+        ObjectId id = BLOB_IDS.get(ref);
+        if (id == null) {
+            File blob = Utils.join(Command.BLOBS_FOLDER, ref);
+            if (!blob.isFile()) {
+                throw Utils.error("Missing object %s.", ref);
+            }
+            id = put(blob);
+            BLOB_IDS.put(ref, id);
+        }
+        return id;
+    }
+
+    /** Returns the file that holds, or would hold, the object with content
+     *  id ID. */
+    static File objectFile(ObjectId id) {
+        String hex = id.toHex();
+        return Utils.join(OBJECTS_FOLDER, hex.substring(0, 2),
+                          hex.substring(2));
+    }
+
+    /** Marks the contents with content id ID as just stored, if they are,
+     *  so that the GarbageCollector gives them a full grace period however
+     *  long ago they were first written: a loose object is touched, and
+     *  the blob pack is touched if they are packed. Returns true if they
+     *  are stored. */
+    private static boolean freshen(ObjectId id) {
+        File obj = objectFile(id);
+        if (obj.length() > 0) {
+            obj.setLastModified(System.currentTimeMillis());
+            return true;
+        } else if (BlobPack.contains(id)) {
+            BlobPack.touch();
+            return true;
+        }
+        return false;
+    }
+
+    /** Deflates everything in IN into a temporary file and then renames it
+     *  to OBJ, so that a partly written object is never visible. */
+    private static void write(InputStream in, File obj) throws IOException {
+        install(deflate(in), obj);
+    }
+
+    /** Deflates everything in IN into a new temporary file in the
+     *  OBJECTS_FOLDER and returns it. */
+    private static File deflate(InputStream in) throws IOException {
+        OBJECTS_FOLDER.mkdirs();
+        File tmp = File.createTempFile("obj", null, OBJECTS_FOLDER);
+        Deflater deflater = new Deflater();
+        try (OutputStream out =
+                 new DeflaterOutputStream(Files.newOutputStream(tmp.toPath()),
+                                          deflater, Utils.CHUNK_SIZE)) {
+            in.transferTo(out);
+        } finally {
+            deflater.end();
+        }
+        return tmp;
+    }
+
+    /** Renames TMP, a deflated object written whole, to OBJ. The
+     *  Transaction syncs the object before any metadata can refer to it,
+     *  either before it is renamed or with the rest of the batch. */
+    private static void install(File tmp, File obj) throws IOException {
+        obj.getParentFile().mkdirs();
+        Transaction.rename(tmp, obj);
+        Transaction.written(obj.getParentFile());
+    }
+
+    /** Forgets the map from migrated blob names to content ids, so that it
+     *  is read again the next time it is needed. */
+    static synchronized void refresh() {
+        _legacy = null;
+    }
+
+    /** Returns the map from migrated blob names to content ids.
+     *  Synchronized, since the GarbageCollector marks from several
+     *  threads. */
+    private static synchronized HashMap<String, ObjectId> legacy() {
+        if (_legacy == null) {
+            if (Transaction.exists(LEGACY_FILE)) {
+                _legacy = new Codec.Reader(Transaction.read(LEGACY_FILE))
+                    .refs();
+            } else {
+                _legacy = new HashMap<>();
+            }
+        }
+        return _legacy;
+    }
+
+    /** Migrated blob names mapped to content ids, or null if not read. */
+    private static HashMap<String, ObjectId> _legacy;
+
+    /** The content ids of the legacy blobs in the BLOBS folder that have
+     *  been hashed and stored, by blob name. */
+    private static final ConcurrentHashMap<String, ObjectId> BLOB_IDS =
+        new ConcurrentHashMap<>();
+
+}
@@ -0,0 +1,155 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Operations on the index of a pack file: a sequence of fixed-width
+ * entries, each a sha1 followed by the offset of its record in the pack,
+ * sorted by sha1 so that lookups are binary searches.
+ *
+ * A pack and its index are replaced together as a new generation. The
+ * files of generation N of the pack named NAME are NAME-N.pack, NAME-N.idx
+ * and any other NAME-N files that belong with them, and the current
+ * generation is the greatest one whose index exists. A new generation's
+ * pack is renamed into place before its index, so renaming the index is
+ * the single step that moves readers from one whole generation to the
+ * next; a crash before it leaves the old generation current.
+ * @author Divya Sivanandan */
+class PackIndex {
+
+    /** Size in bytes of a single index entry: a sha1 and a long offset. */
+    static final int ENTRY_SIZE = Utils.UID_LENGTH + Long.BYTES;
+
+    /** Returns the number of entries in INDEX. */
+    static int size(ByteBuffer index) {
+        return index.capacity() / ENTRY_SIZE;
+    }
+
+    /** Returns the sha1 of entry K of INDEX. */
+    static ObjectId id(ByteBuffer index, int k) {
+        return ObjectId.fromAscii(index, k * ENTRY_SIZE);
+    }
+
+    /** Returns the pack offset of entry K of INDEX. */
+    static long offset(ByteBuffer index, int k) {
+        return index.getLong(k * ENTRY_SIZE + Utils.UID_LENGTH);
+    }
+
+    /** Returns the position of the entry for sha1 ID in INDEX, or
+     *  (-(insertion point) - 1) if there is none. */
+    static int find(ByteBuffer index, ObjectId id) {
+        byte[] key = id.toAscii();
+        int k = lowerBound(index, key);
+        if (k < size(index)
+            && compare(index, k * ENTRY_SIZE, key, Utils.UID_LENGTH) == 0) {
+            return k;
+        }
+        return -k - 1;
+    }
+
+    /** Returns the position of the first entry of INDEX whose sha1 is not
+     *  less than the characters of KEY, compared over KEY's length. */
+    static int lowerBound(ByteBuffer index, byte[] key) {
+        int lo = 0, hi = size(index);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(index, mid * ENTRY_SIZE, key, key.length) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns true if the sha1 of entry K of INDEX starts with KEY. */
+    static boolean startsWith(ByteBuffer index, int k, byte[] key) {
+        return compare(index, k * ENTRY_SIZE, key, key.length) == 0;
+    }
+
+    /** Returns an index entry for sha1 ID at pack OFFSET. */
+    static byte[] entry(ObjectId id, long offset) {
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        entry.put(id.toAscii());
+        entry.putLong(offset);
+        return entry.array();
+    }
+
+    /** Returns the current generation of the pack named NAME in FOLDER:
+     *  the greatest N for which NAME-N.idx exists, or 0 if there is
+     *  none. */
+    static int generation(File folder, String name) {
+        int result = 0;
+        String[] files = folder.list();
+        if (files != null) {
+            Pattern index = Pattern.compile(Pattern.quote(name)
+                                            + "-(\\d{1,9})\\.idx");
+            for (String f : files) {
+                Matcher m = index.matcher(f);
+                if (m.matches()) {
+                    result = Math.max(result, Integer.parseInt(m.group(1)));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the file with SUFFIX of generation GEN of the pack named
+     *  NAME in FOLDER. */
+    static File file(File folder, String name, int gen, String suffix) {
+        return new File(folder, name + "-" + gen + suffix);
+    }
+
+    /** Makes the pack PACK and its index INDEX, both written whole and
+     *  synced, generation GEN of the pack named NAME in FOLDER: renames
+     *  the pack into place, then the index, syncing FOLDER after each so
+     *  that the index never reaches the disk before its pack. */
+    static void install(File pack, File index, File folder, String name,
+                        int gen) throws IOException {
+        Files.move(pack.toPath(), file(folder, name, gen, ".pack").toPath(),
+                   StandardCopyOption.ATOMIC_MOVE);
+        Transaction.force(folder);
+        Files.move(index.toPath(),
+                   file(folder, name, gen, ".idx").toPath(),
+                   StandardCopyOption.ATOMIC_MOVE);
+        Transaction.force(folder);
+    }
+
+    /** Deletes the files of every generation of the pack named NAME in
+     *  FOLDER other than GEN, including any left by a replacement that a
+     *  crash interrupted. A process still reading an older generation
+     *  keeps the files it has open. */
+    static void retain(File folder, String name, int gen) {
+        String[] files = folder.list();
+        if (files == null) {
+            return;
+        }
+        Pattern pattern = Pattern.compile(Pattern.quote(name)
+                                          + "-(\\d{1,9})\\.\\w+");
+        for (String f : files) {
+            Matcher m = pattern.matcher(f);
+            if (m.matches() && Integer.parseInt(m.group(1)) != gen) {
+                new File(folder, f).delete();
+            }
+        }
+    }
+
+    /** Compares the first LEN characters of the sha1 stored at byte offset
+     *  AT of INDEX with those of KEY. */
+    private static int compare(ByteBuffer index, int at, byte[] key,
+                               int len) {
+        for (int i = 0; i < len; i += 1) {
+            int d = index.get(at + i) - key[i];
+            if (d != 0) {
+                return d;
+            }
+        }
+        return 0;
+    }
+
+}
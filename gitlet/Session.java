@@ -0,0 +1,119 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/** The repository state that a single command works with. Each part of
+ * the state is only read from the .gitlet folder or the working directory
+ * the first time it is asked for, and is then kept for the rest of the
+ * command, so a command never pays for state it does not use.
+ * @author Divya Sivanandan */
+class Session {
+
+    /** Returns the GitTree of the repository. */
+    GitTree tree() {
+        if (_tree == null) {
+            _tree = GitTree.fromFile();
+        }
+        return _tree;
+    }
+
+    /** Sets the GitTree of the repository to TREE. Used by init. */
+    void setTree(GitTree tree) {
+        _tree = tree;
+    }
+
+    /** Returns the active Branch, read from file each time since commits
+     * move its head. */
+    Branch activeBranch() {
+        File active = Utils.join(Command.GITLET_FOLDER, "active");
+        return Branch.fromFile(new String(Transaction.read(active),
+                                          StandardCharsets.UTF_8));
+    }
+
+    /** Returns the staging area. */
+    StagingIndex index() {
+        if (_index == null) {
+            _index = StagingIndex.fromFile(tree());
+        }
+        return _index;
+    }
+
+    /** Returns the files in the staging area mapped to the contents they
+     * refer to. */
+    Map<String, ObjectId> staged() {
+        return index().added();
+    }
+
+    /** Saves the staging area if it was read and changed. Called once
+     * when a command ends. */
+    void save() {
+        if (_index != null) {
+            _index.save(tree());
+        }
+    }
+
+    /** Returns the files in the head commit of the active branch mapped to
+     * the contents they refer to. */
+    HashMap<String, ObjectId> headFiles() {
+        if (_headFiles == null) {
+            Commit head = Commit.fromFile(activeBranch().getHead());
+            _headFiles = head.getFiles();
+            if (_headFiles == null) {
+                _headFiles = new HashMap<>();
+            }
+        }
+        return _headFiles;
+    }
+
+    /** Returns the files tracked by the head commit of the active branch,
+     * excluding those staged for removal. */
+    ArrayList<String> tracked() {
+        if (_tracked == null) {
+            _tracked = new ArrayList<>(headFiles().keySet());
+            _tracked.removeAll(index().removed());
+        }
+        return _tracked;
+    }
+
+    /** Forgets the head commit's files and the tracked files so that they
+     * are recomputed from the head commit the next time they are needed. */
+    void resetTracked() {
+        _headFiles = null;
+        _tracked = null;
+    }
+
+    /** Returns the files in the working directory that are neither staged
+     * nor tracked. */
+    ArrayList<String> untracked() {
+        if (_untracked == null) {
+            _untracked = new ArrayList<>();
+            for (File f : Command.CWD.listFiles()) {
+                if (f.isFile() && !staged().containsKey(f.getName())
+                        && !tracked().contains(f.getName())) {
+                    _untracked.add(f.getName());
+                }
+            }
+        }
+        return _untracked;
+    }
+
+    /** The GitTree, or null if not yet read. */
+    private GitTree _tree;
+
+    /** The staging area, or null if not yet read. */
+    private StagingIndex _index;
+
+    /** Files of the head commit, or null if not yet read. */
+    private HashMap<String, ObjectId> _headFiles;
+
+    /** Tracked files, or null if not yet computed. */
+    private ArrayList<String> _tracked;
+
+    /** Untracked files, or null if not yet computed. */
+    private ArrayList<String> _untracked;
+
+}
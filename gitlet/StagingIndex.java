@@ -0,0 +1,147 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The staging area: the files staged for addition, mapped to the
+ * contents they refer to, and the files staged for removal. Both are kept
+ * together in a single index file, which is read whole the first time a
+ * command needs it and, if the command changed anything, written once when
+ * the command ends, as part of the command's Transaction.
+ *
+ * Repositories written by earlier versions of Gitlet kept one file per
+ * staged file in the STAGED folder and the files staged for removal in
+ * the GitTree. Those are read while there is no index, and removed once
+ * one has been written.
+ * @author Divya Sivanandan */
+class StagingIndex {
+
+    /** File where the index is saved. */
+    static final File INDEX_FILE = Utils.join(".gitlet", "index");
+
+    /** Returns the saved staging area of the repository whose GitTree is
+     *  TREE. */
+    static StagingIndex fromFile(GitTree tree) {
+        StagingIndex result = new StagingIndex();
+        if (Transaction.exists(INDEX_FILE)) {
+            Codec.Reader in = new Codec.Reader(Transaction.read(INDEX_FILE));
+            HashMap<String, ObjectId> added = in.refs();
+            ArrayList<String> removed = in.strings();
+            if (added != null) {
+                result._added = added;
+            }
+            if (removed != null) {
+                result._removed = removed;
+            }
+        } else {
+            File[] staged = Command.STAGING_AREA.listFiles();
+            if (staged != null) {
+                for (File f : staged) {
+                    result._added.put(f.getName(), ObjectStore.contentId(
+                        Utils.readContentsAsString(f)));
+                }
+            }
+            if (tree.getRemoved() != null) {
+                result._removed.addAll(tree.getRemoved());
+            }
+            result._legacy = staged != null || !result._removed.isEmpty();
+        }
+        return result;
+    }
+
+    /** Returns the files staged for addition mapped to the contents they
+     *  refer to. */
+    Map<String, ObjectId> added() {
+        return Collections.unmodifiableMap(_added);
+    }
+
+    /** Returns the files staged for removal, in the order they were
+     *  staged. */
+    List<String> removed() {
+        return Collections.unmodifiableList(_removed);
+    }
+
+    /** Returns true if nothing is staged for addition or removal. */
+    boolean isEmpty() {
+        return _added.isEmpty() && _removed.isEmpty();
+    }
+
+    /** Stages the file NAME for addition with the contents ID. */
+    void add(String name, ObjectId id) {
+        if (!id.equals(_added.put(name, id))) {
+            _changed = true;
+        }
+    }
+
+    /** Unstages the file NAME for addition, if it is staged. */
+    void unadd(String name) {
+        if (_added.remove(name) != null) {
+            _changed = true;
+        }
+    }
+
+    /** Stages the file NAME for removal, if it is not already. */
+    void remove(String name) {
+        if (!_removed.contains(name)) {
+            _removed.add(name);
+            _changed = true;
+        }
+    }
+
+    /** Unstages the file NAME for removal, if it is staged. */
+    void unremove(String name) {
+        if (_removed.remove(name)) {
+            _changed = true;
+        }
+    }
+
+    /** Unstages every file. */
+    void clear() {
+        if (!isEmpty()) {
+            _added.clear();
+            _removed.clear();
+            _changed = true;
+        }
+    }
+
+    /** Saves the index if it changed since it was read, then removes any
+     *  staging area left by an earlier version of Gitlet from TREE and the
+     *  STAGED folder. */
+    void save(GitTree tree) {
+        if (!_changed) {
+            return;
+        }
+        Transaction.write(INDEX_FILE, new Codec.Writer().refs(_added)
+                          .strings(_removed).toByteArray());
+        _changed = false;
+        if (_legacy) {
+            File[] staged = Command.STAGING_AREA.listFiles();
+            if (staged != null) {
+                for (File f : staged) {
+                    Transaction.delete(f);
+                }
+            }
+            Transaction.delete(Command.STAGING_AREA);
+            tree.clearRemoved();
+            _legacy = false;
+        }
+    }
+
+    /** Files staged for addition mapped to the contents they refer to. */
+    private HashMap<String, ObjectId> _added = new HashMap<>();
+
+    /** Files staged for removal, in the order they were staged. */
+    private ArrayList<String> _removed = new ArrayList<>();
+
+    /** True if the index changed since it was read. */
+    private boolean _changed;
+
+    /** True if the index was read from a staging area left by an earlier
+     *  version of Gitlet that has not yet been removed. */
+    private boolean _legacy;
+
+}
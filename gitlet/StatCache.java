@@ -0,0 +1,164 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Remembers the size, modification time, inode and content hash of files
+ * in the working directory, so that a file whose stat information has not
+ * changed since it was last hashed does not need to be read again. The
+ * cache is saved with Codec. One saved by an earlier version of Gitlet is
+ * a Java serialization stream, and is ignored: the cache is rebuilt as
+ * files are hashed again.
+ * @author Divya Sivanandan */
+class StatCache {
+
+    /** File where the cache is saved. */
+    static final File CACHE_FILE = Utils.join(".gitlet", "statcache");
+
+    /** Modification times are only trusted when the file had not been
+     *  touched for at least this many nanoseconds before it was hashed.
+     *  A file changed again within the same timestamp tick as its hashing
+     *  would otherwise look unchanged. */
+    static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** Returns the saved cache, or an empty one if none was saved. */
+    static StatCache fromFile() {
+        if (!Transaction.exists(CACHE_FILE)) {
+            return new StatCache();
+        }
+        byte[] data = Transaction.read(CACHE_FILE);
+        StatCache cache = new StatCache();
+        if (Codec.isSerialized(data)) {
+            return cache;
+        }
+        try {
+            Codec.Reader in = new Codec.Reader(data);
+            for (long n = in.number(); n > 0; n -= 1) {
+                cache._entries.put(in.string(), new Entry(in));
+            }
+            return cache;
+        } catch (GitletException | BufferUnderflowException excp) {
+            return new StatCache();
+        }
+    }
+
+    /** Saves the cache if any entry changed since it was read. */
+    void save() {
+        if (_changed) {
+            Codec.Writer out = new Codec.Writer().number(_entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                e.getValue().write(out.string(e.getKey()));
+            }
+            Transaction.write(CACHE_FILE, out.toByteArray());
+            _changed = false;
+        }
+    }
+
+    /** Returns the sha1 of the contents of FILE, or null if FILE does not
+     *  exist. FILE is only read if its stat information differs from the
+     *  cached entry or the cached entry is racily clean. */
+    ObjectId hash(File file) {
+        String path = file.getPath();
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file.toPath(),
+                                         BasicFileAttributes.class);
+        } catch (NoSuchFileException excp) {
+            if (_entries.remove(path) != null) {
+                _changed = true;
+            }
+            return null;
+        } catch (IOException excp) {
+            throw Utils.error("Could not stat %s.", path);
+        }
+        long size = attrs.size();
+        long mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        String inode = String.valueOf(attrs.fileKey());
+        Entry e = _entries.get(path);
+        if (e != null && e.matches(size, mtime, inode)) {
+            return e._hash;
+        }
+        long hashedAt = System.currentTimeMillis();
+        ObjectId hash = Utils.sha1Contents(file);
+        _entries.put(path, new Entry(size, mtime, inode, hash,
+                                     TimeUnit.MILLISECONDS.toNanos(hashedAt)));
+        _changed = true;
+        return hash;
+    }
+
+    /** Forgets every entry whose path is not in PATHS. */
+    void retain(Collection<String> paths) {
+        if (_entries.keySet().retainAll(paths)) {
+            _changed = true;
+        }
+    }
+
+    /** Cached information about a single file. */
+    private static class Entry {
+
+        /** An entry for a file of SIZE bytes last modified at MTIME with
+         *  file key INODE, whose contents hashed to HASH at time HASHEDAT.
+         *  Times are in nanoseconds since the epoch. */
+        Entry(long size, long mtime, String inode, ObjectId hash,
+              long hashedAt) {
+            _size = size;
+            _mtime = mtime;
+            _inode = inode;
+            _hash = hash;
+            _trusted = hashedAt - mtime >= RACY_NANOS;
+        }
+
+        /** The entry whose fields are read from IN. */
+        Entry(Codec.Reader in) {
+            _size = in.number();
+            _mtime = in.number();
+            _inode = in.string();
+            _hash = in.id();
+            _trusted = in.number() != 0;
+        }
+
+        /** Appends the fields of this entry to OUT. */
+        void write(Codec.Writer out) {
+            out.number(_size).number(_mtime).string(_inode).id(_hash)
+                .number(_trusted ? 1 : 0);
+        }
+
+        /** Returns true if a file with SIZE, MTIME and INODE can be assumed
+         *  to have the contents recorded in this entry. */
+        boolean matches(long size, long mtime, String inode) {
+            return _trusted && _size == size && _mtime == mtime
+                && _inode.equals(inode);
+        }
+
+        /** File size in bytes. */
+        private final long _size;
+
+        /** Modification time in nanoseconds since the epoch. */
+        private final long _mtime;
+
+        /** Device and inode of the file. */
+        private final String _inode;
+
+        /** Sha1 of the file contents. */
+        private final ObjectId _hash;
+
+        /** False if the file was hashed so soon after it was modified that
+         *  a further change could have kept the same modification time. */
+        private final boolean _trusted;
+    }
+
+    /** Maps paths to their cached information. */
+    private HashMap<String, Entry> _entries = new HashMap<>();
+
+    /** True if _entries changed since the cache was read. */
+    private boolean _changed;
+
+}
@@ -0,0 +1,306 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/** The unit of work of a single command. While a command runs, every write
+ * to the repository's metadata, namely the GitTree, the branches, the
+ * active branch, the staging area and the stat cache, is held in memory,
+ * and reads of those files see the held writes. When the command ends the
+ * writes are applied in one batch, in the order the files were first
+ * written: each new file is written to a temporary file beside it and
+ * renamed into place, so no file is ever seen half written. Objects,
+ * commits and the indexes over them are written as they are made, since
+ * nothing refers to them until the metadata does; they are reported to
+ * the transaction so that they can be synced before it. A new object is
+ * written under a temporary name and renamed to its own, and in batch
+ * mode it is synced only with the rest of the batch, so after a crash an
+ * object that nothing refers to yet may be found empty; ObjectStore
+ * treats such an object as missing.
+ *
+ * Objects may be written from several threads at once, so every method
+ * is synchronized.
+ *
+ * How hard the transaction works to survive a crash is chosen by the
+ * environment variable GITLET_FSYNC:
+ *   none    never syncs, leaving it to the operating system;
+ *   batch   syncs every data file written by the command, new objects
+ *           included, once, just before the metadata is renamed into
+ *           place, and each directory changed once after (the default);
+ *   always  syncs data files as they are written, each new object before
+ *           it is renamed, and each metadata file and its directory as it
+ *           is renamed, so the files reach the disk in the order they are
+ *           applied.
+ * Files that replace others of the same name, such as the packs and
+ * indexes rewritten by gc, are always synced before they are renamed
+ * unless the durability is none.
+ * @author Divya Sivanandan */
+class Transaction {
+
+    /** Environment variable that chooses the durability. */
+    static final String VARIABLE = "GITLET_FSYNC";
+
+    /** How writes are made durable. */
+    enum Durability {
+        /** Never sync. */
+        NONE,
+        /** Sync everything written once, when the transaction ends. */
+        BATCH,
+        /** Sync every write as it is made. */
+        ALWAYS
+    }
+
+    /** Returns the durability chosen by GITLET_FSYNC. Throws
+     *  GitletException if it names none. */
+    static synchronized Durability durability() {
+        if (_durability == null) {
+            String name = System.getenv(VARIABLE);
+            if (name == null || name.isEmpty()) {
+                _durability = Durability.BATCH;
+            } else {
+                try {
+                    _durability =
+                        Durability.valueOf(name.toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException excp) {
+                    throw Utils.error("Unknown %s mode: %s.", VARIABLE,
+                                      name);
+                }
+            }
+        }
+        return _durability;
+    }
+
+    /** Starts a new unit of work, discarding any writes held for one that
+     *  was never finished. */
+    static synchronized void begin() {
+        PENDING.clear();
+        DIRTY.clear();
+        _active = true;
+    }
+
+    /** Applies the writes held for the current unit of work, if any. */
+    static synchronized void commit() {
+        if (!_active) {
+            return;
+        }
+        _active = false;
+        try {
+            apply(PENDING, DIRTY);
+        } finally {
+            PENDING.clear();
+            DIRTY.clear();
+        }
+    }
+
+    /** Discards the writes held for the current unit of work. Data files
+     *  already written are left, but nothing refers to them. */
+    static synchronized void abort() {
+        PENDING.clear();
+        DIRTY.clear();
+        _active = false;
+    }
+
+    /** Replaces the contents of FILE with DATA, once the current unit of
+     *  work ends or now if there is none. */
+    static synchronized void write(File file, byte[] data) {
+        if (_active) {
+            PENDING.put(key(file), data);
+        } else {
+            apply(Map.of(key(file), data), Set.of());
+        }
+    }
+
+    /** Deletes FILE, once the current unit of work ends or now if there is
+     *  none. */
+    static synchronized void delete(File file) {
+        if (_active) {
+            PENDING.put(key(file), DELETED);
+        } else {
+            file.delete();
+        }
+    }
+
+    /** Returns true if FILE exists, counting held writes. */
+    static synchronized boolean exists(File file) {
+        byte[] data = _active ? PENDING.get(key(file)) : null;
+        if (data != null) {
+            return data != DELETED;
+        }
+        return file.exists();
+    }
+
+    /** Returns the contents of FILE, counting held writes. Throws
+     *  IllegalArgumentException if FILE is not a normal file. */
+    static synchronized byte[] read(File file) {
+        byte[] data = _active ? PENDING.get(key(file)) : null;
+        if (data == DELETED) {
+            throw new IllegalArgumentException("must be a normal file");
+        } else if (data != null) {
+            return data;
+        }
+        return Utils.readContents(file);
+    }
+
+    /** Records that the data file FILE has just been written in place, so
+     *  that it is synced as the durability requires before any metadata
+     *  that may refer to it. */
+    static synchronized void written(File file) {
+        Durability d = durability();
+        if (d == Durability.ALWAYS || (d == Durability.BATCH && !_active)) {
+            sync(file.toPath());
+        } else if (d == Durability.BATCH) {
+            DIRTY.add(key(file));
+        }
+    }
+
+    /** Syncs FILE now unless the durability is none. Used for data files
+     *  that are written whole and then renamed over others, such as a
+     *  rewritten pack, which must reach the disk before their new names
+     *  do. */
+    static void force(File file) {
+        if (durability() != Durability.NONE) {
+            sync(file.toPath());
+        }
+    }
+
+    /** Renames the data file TMP, which has just been written whole, to
+     *  FILE, which must be new or empty. While a unit of work is under way
+     *  in batch mode, FILE is synced along with the other data files when
+     *  the unit ends; otherwise TMP is synced first unless the durability
+     *  is none. */
+    static void rename(File tmp, File file) throws IOException {
+        boolean batched = batched();
+        if (!batched) {
+            force(tmp);
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                   StandardCopyOption.ATOMIC_MOVE);
+        if (batched) {
+            written(file);
+        }
+    }
+
+    /** Returns true if data files are being synced in one batch at the end
+     *  of a unit of work. */
+    private static synchronized boolean batched() {
+        return _active && durability() == Durability.BATCH;
+    }
+
+    /** Syncs the data files in DIRTY that still exist, then replaces each
+     *  file in WRITES with its new contents, or deletes it, in order,
+     *  syncing as the durability requires. In batch mode the folders of
+     *  the files replaced so far are synced before each deletion, so that
+     *  a file is never deleted before the replacements held ahead of it,
+     *  which may record where its contents went, are durable. A data file
+     *  deleted since it was written, such as a loose object that gc has
+     *  just packed, needs no sync, and neither does a directory that WRITES
+     *  deletes, such as the STAGED folder of an earlier version. */
+    private static void apply(Map<Path, byte[]> writes, Set<Path> dirty) {
+        Durability d = durability();
+        boolean always = d == Durability.ALWAYS;
+        if (d != Durability.NONE) {
+            for (Path p : dirty) {
+                if (Files.exists(p)) {
+                    sync(p);
+                }
+            }
+        }
+        Map<Path, Path> temps = new LinkedHashMap<>();
+        Set<Path> dirs = new LinkedHashSet<>();
+        try {
+            for (Map.Entry<Path, byte[]> w : writes.entrySet()) {
+                if (w.getValue() != DELETED) {
+                    Path dir = w.getKey().toAbsolutePath().getParent();
+                    Path tmp = Files.createTempFile(dir, "txn", null);
+                    Files.write(tmp, w.getValue());
+                    if (d == Durability.BATCH) {
+                        sync(tmp);
+                    }
+                    temps.put(w.getKey(), tmp);
+                }
+            }
+            for (Path p : writes.keySet()) {
+                Path tmp = temps.get(p);
+                if (tmp == null) {
+                    if (d == Durability.BATCH) {
+                        syncAll(dirs);
+                    }
+                    Files.deleteIfExists(p);
+                } else {
+                    if (always) {
+                        sync(tmp);
+                    }
+                    Files.move(tmp, p, StandardCopyOption.ATOMIC_MOVE);
+                }
+                Path dir = p.toAbsolutePath().getParent();
+                if (always) {
+                    sync(dir);
+                } else {
+                    dirs.add(dir);
+                }
+            }
+        } catch (IOException excp) {
+            for (Path tmp : temps.values()) {
+                tmp.toFile().delete();
+            }
+            throw Utils.error("Could not write the repository metadata.");
+        }
+        if (d == Durability.BATCH) {
+            syncAll(dirs);
+        }
+    }
+
+    /** Syncs each folder in DIRS that still exists, and empties DIRS. */
+    private static void syncAll(Set<Path> dirs) {
+        for (Path dir : dirs) {
+            if (Files.isDirectory(dir)) {
+                sync(dir);
+            }
+        }
+        dirs.clear();
+    }
+
+    /** Forces the file or directory P to the disk. */
+    private static void sync(Path p) {
+        StandardOpenOption mode = Files.isDirectory(p)
+            ? StandardOpenOption.READ : StandardOpenOption.WRITE;
+        try (FileChannel ch = FileChannel.open(p, mode)) {
+            ch.force(true);
+        } catch (IOException excp) {
+            throw Utils.error("Could not sync %s.", p.getFileName());
+        }
+    }
+
+    /** Returns the key under which writes to FILE are held. */
+    private static Path key(File file) {
+        return file.toPath().normalize();
+    }
+
+    /** Stands in the held writes for a file that is to be deleted. */
+    private static final byte[] DELETED = new byte[0];
+
+    /** Writes held for the current unit of work, in the order each file
+     *  was first written. */
+    private static final Map<Path, byte[]> PENDING = new LinkedHashMap<>();
+
+    /** Data files written during the current unit of work that have yet
+     *  to be synced. */
+    private static final Set<Path> DIRTY = new LinkedHashSet<>();
+
+    /** The durability in use, or null if not yet read. */
+    private static Durability _durability;
+
+    /** True while a unit of work is under way. */
+    private static boolean _active;
+
+}
@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -9,13 +10,15 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -29,30 +32,69 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** Size in bytes of the buffers used to stream file contents. */
+    static final int CHUNK_SIZE = 1 << 16;
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
+        MessageDigest md = digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        }
+        return ObjectId.toHex(md.digest(), 0);
+    }
+
+    /** Returns the SHA-1 hash of DATA as an ObjectId. */
+    static ObjectId sha1Id(byte[] data) {
+        return ObjectId.of(digest().digest(data), 0);
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE as an ObjectId.
+     *  FILE is read in chunks of CHUNK_SIZE bytes, so memory use does not
+     *  depend on the size of FILE.  Throws IllegalArgumentException in
+     *  case of problems. */
+    static ObjectId sha1Contents(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            MessageDigest md = digest();
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+            while (in.read(chunk) >= 0) {
+                chunk.flip();
+                md.update(chunk);
+                chunk.clear();
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+            return ObjectId.of(md.digest(), 0);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
+    /** Returns this thread's SHA-1 digest, reset and ready for use. Each
+     *  thread creates its digest once rather than once per hash. */
+    static MessageDigest digest() {
+        MessageDigest md = SHA1.get();
+        md.reset();
+        return md;
+    }
+
+    /** The SHA-1 digest of each thread. */
+    private static final ThreadLocal<MessageDigest> SHA1 =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+            }
+        });
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -148,6 +190,22 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
         writeContents(file, serialize(obj));
@@ -201,6 +259,27 @@ class Utils {
     }
 
 
+    /* MEMORY-MAPPED FILES */
+
+    /** Returns a read-only mapping of the whole of FILE, or an empty buffer
+     *  if FILE does not exist.  Throws GitletException in case of
+     *  problems, which include FILE being too large for a single mapping,
+     *  whose offsets are ints. */
+    static ByteBuffer map(File file) {
+        if (!file.exists()) {
+            return ByteBuffer.allocate(0);
+        }
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) {
+                throw error("%s is too large to read.", file.getName());
+            }
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw error("Could not read %s.", file.getName());
+        }
+    }
+
     /* SERIALIZATION UTILITIES */
 
     /** Returns a byte array containing the serialized contents of OBJ. */
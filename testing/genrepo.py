@@ -0,0 +1,410 @@
+import sys, random, socket, struct, time
+from subprocess import run, Popen, PIPE, DEVNULL
+from getopt import getopt, GetoptError
+from os import getcwd, listdir, mkdir, walk
+from os.path import abspath, dirname, exists, getsize, join
+from math import log
+
+SHORT_USAGE = """\
+Usage: python3 genrepo.py OPTIONS DIR
+   OPTIONS may include
+       --files=N          Number of files (default 1000).
+       --commits=M        Number of commits to make after the first
+                          (default 200).
+       --branches=B       Number of branches besides master (default 4).
+       --topology=T       One of linear, branchy or crisscross (default
+                          branchy).
+       --sizes=DIST       Distribution of file sizes in bytes (default
+                          lognormal:2048:1.0).
+       --max-size=N       Largest file size in bytes (default 1048576).
+       --change=K         Files changed by each commit (default 3).
+       --topic-commits=T  Average commits on each topic branch (default 5).
+       --seed=S           Seed for the random choices (default 61).
+       --progdir=DIR      Directory or JAR files containing gitlet
+                          application.
+       --no-daemon        Run each gitlet command in a JVM of its own.
+       --verbose          Print each gitlet command as it is run.
+"""
+
+USAGE = SHORT_USAGE + """\
+
+Creates the directory DIR and builds a gitlet repository in it by running
+gitlet itself, so the repository is exactly what a user would have made.
+The files are all in DIR, named f000000.txt and so on, and hold lines of
+text drawn from a fixed pool of random lines. Their sizes are drawn from
+DIST, which is one of
+
+   fixed:N               every file is N bytes;
+   uniform:LO:HI         sizes are spread evenly between LO and HI;
+   lognormal:MEDIAN:S    sizes have median MEDIAN, and their logarithms
+                         standard deviation S;
+   pareto:MIN:ALPHA      sizes are at least MIN, with a heavy tail that is
+                         heavier the smaller ALPHA is.
+
+The first commit adds every file. Each later commit changes a few lines of
+K files, and the files are split among the branches, so that only merges
+with several best common ancestors conflict. Such conflicts are resolved
+as a user would, by keeping the version from the branch whose files they
+are, and committing. The shape of the history is given by T:
+
+   linear      every commit is on master.
+   branchy     B topic branches at a time are forked from master, given
+               about T commits each, and merged back into master one after
+               another once master has moved on, so that none of the
+               merges is a fast-forward. The last B branches, named
+               open1 to openB, are left unmerged, and master has moved on
+               since they were forked.
+   crisscross  B long-lived branches, named open1 to openB, take turns
+               being merged with master both ways at once, so that later
+               merges between them have several best common ancestors.
+
+M counts merge commits too, and is approximate, since the history is
+finished off once it is reached. Unless --no-daemon is given, the commands
+are served by a gitlet daemon, which is much faster for large histories.
+The repository is left on master with a clean working directory.
+
+macrobench.py times gitlet commands against the repositories this
+makes."""
+
+JAVA_COMMAND = "java"
+GITLET_CLASS = "gitlet.Main"
+SOCKET = join(".gitlet", "daemon.sock")
+DAEMON_TIMEOUT = 30
+LINE = 64
+POOL_SIZE = 4096
+LETTERS = "abcdefghijklmnopqrstuvwxyz     "
+CONFLICT = "Encountered a merge conflict."
+OURS, SEPARATOR, END = b"<<<<<<< HEAD\n", b"=======\n", b">>>>>>>\n"
+
+def Usage():
+    print(SHORT_USAGE, file=sys.stderr)
+    sys.exit(1)
+
+def findProgDir():
+    prog_dir = abspath(getcwd())
+    for k in range(10):
+        if exists(join(prog_dir, 'gitlet', 'Main.class')):
+            return prog_dir
+        prog_dir = dirname(prog_dir)
+    print("Could not find gitlet.Main.", file=sys.stderr)
+    sys.exit(1)
+
+def requestSize(args):
+    return 4 + sum(2 + len(a.encode()) for a in args)
+
+def treeSize(dir):
+    return sum(getsize(join(d, f)) for d, _, fs in walk(dir) for f in fs)
+
+class Gitlet:
+    """Runs gitlet commands in a repository, each in a JVM of its own or,
+    once start() has been called, through a daemon."""
+
+    def __init__(self, repo, prog_dir, use_daemon, verbose=False):
+        self.repo = abspath(repo)
+        self.prog_dir = prog_dir
+        self.use_daemon = use_daemon
+        self.verbose = verbose
+        self.daemon = None
+
+    def command(self, args):
+        return [JAVA_COMMAND, "-cp", self.prog_dir, GITLET_CLASS] + list(args)
+
+    def start(self):
+        if not self.use_daemon or self.daemon:
+            return
+        self.daemon = Popen(self.command(["daemon"]), cwd=self.repo,
+                            stdin=DEVNULL, stdout=DEVNULL)
+        deadline = time.monotonic() + DAEMON_TIMEOUT
+        while not exists(join(self.repo, SOCKET)):
+            if self.daemon.poll() is not None or time.monotonic() > deadline:
+                raise ValueError("could not start the gitlet daemon")
+            time.sleep(0.05)
+
+    def stop(self):
+        if self.daemon:
+            self.request(["daemon", "stop"])
+            self.daemon.wait()
+            self.daemon = None
+
+    def run(self, *args):
+        if self.verbose:
+            print("+ gitlet {}".format(" ".join(args)))
+        if self.daemon:
+            return self.request(args)
+        result = run(self.command(args), cwd=self.repo, stdin=DEVNULL,
+                     stdout=PIPE, stderr=PIPE)
+        return (result.returncode, result.stdout.decode(),
+                result.stderr.decode())
+
+    def request(self, args):
+        data = struct.pack(">i", len(args))
+        for a in args:
+            a = a.encode()
+            data += struct.pack(">H", len(a)) + a
+        with socket.socket(socket.AF_UNIX, socket.SOCK_STREAM) as sock:
+            sock.connect(join(self.repo, SOCKET))
+            sock.sendall(data)
+            reply = sock.makefile("rb")
+            status, = struct.unpack(">i", reply.read(4))
+            out = reply.read(struct.unpack(">i", reply.read(4))[0])
+            err = reply.read(struct.unpack(">i", reply.read(4))[0])
+        return status, out.decode(), err.decode()
+
+    def check(self, *args, allowed=("",)):
+        status, out, err = self.run(*args)
+        if status != 0 or err or out.strip() not in allowed:
+            raise ValueError("gitlet {} failed: {}"
+                             .format(" ".join(args), (err or out).strip()))
+        return out
+
+def sizeDistribution(spec, max_size):
+    kind, *params = spec.split(":")
+    try:
+        params = [float(p) for p in params]
+    except ValueError:
+        kind = None
+    if kind == "fixed" and len(params) == 1:
+        return lambda rnd: min(int(params[0]), max_size)
+    elif kind == "uniform" and len(params) == 2:
+        return lambda rnd: min(int(rnd.uniform(*params)), max_size)
+    elif kind == "lognormal" and len(params) == 2 and params[0] > 0:
+        return lambda rnd: min(int(rnd.lognormvariate(log(params[0]),
+                                                      params[1])),
+                               max_size)
+    elif kind == "pareto" and len(params) == 2 and params[1] > 0:
+        return lambda rnd: min(int(params[0] * rnd.paretovariate(params[1])),
+                               max_size)
+    raise ValueError("bad size distribution: {}".format(spec))
+
+class Generator:
+    """Builds a synthetic history with a Gitlet, as described in USAGE."""
+
+    def __init__(self, git, files, branches, sizes, change, topic_commits,
+                 seed):
+        self.git = git
+        self.rnd = random.Random(seed)
+        self.sizes = sizes
+        self.change = change
+        self.topic_commits = topic_commits
+        self.branches = branches
+        self.names = ["f{:06d}.txt".format(i) for i in range(files)]
+        self.lanes = [self.names[i::branches + 1]
+                      for i in range(branches + 1)]
+        self.pool = [("".join(self.rnd.choice(LETTERS)
+                              for i in range(LINE - 1)) + "\n").encode()
+                     for k in range(POOL_SIZE)]
+        self.made = self.merges = self.conflicts = 0
+
+    def write(self, name, size):
+        data = b"".join(self.rnd.choices(self.pool, k=size // LINE + 1))
+        with open(join(self.git.repo, name), "wb") as out:
+            out.write(data[:size])
+
+    def edit(self, name):
+        path = join(self.git.repo, name)
+        with open(path, "rb") as inp:
+            data = inp.read()
+        lines = data.splitlines(keepends=True)
+        k = self.rnd.randrange(len(lines) + 1)
+        n = self.rnd.randint(1, 3)
+        lines[k:k + n] = self.rnd.choices(self.pool, k=n)
+        new = b"".join(lines)
+        if new == data:
+            new += self.rnd.choice(self.pool)
+        with open(path, "wb") as out:
+            out.write(new)
+
+    def commit(self, branch, lane):
+        names = self.lanes[lane]
+        changed = self.rnd.sample(names, min(self.change, len(names)))
+        for name in changed:
+            self.edit(name)
+        self.git.check("add", *changed)
+        self.made += 1
+        self.git.check("commit", "{} change {}".format(branch, self.made))
+
+    def merge(self, branch, current, lane):
+        out = self.git.check("merge", branch, allowed=("", CONFLICT))
+        self.made += 1
+        self.merges += 1
+        if out.strip() == CONFLICT:
+            self.conflicts += 1
+            self.resolve(branch, current, lane)
+
+    def resolve(self, branch, current, lane):
+        ours = set(self.lanes[lane])
+        resolved = []
+        for name in self.names:
+            path = join(self.git.repo, name)
+            with open(path, "rb") as inp:
+                data = inp.read()
+            if data.startswith(OURS) and data.endswith(END):
+                head, given = \
+                    data[len(OURS):-len(END)].split(SEPARATOR, 1)
+                with open(path, "wb") as out:
+                    out.write(head if name in ours else given)
+                resolved.append(name)
+        self.git.check("add", *resolved)
+        self.made += 1
+        self.git.check("commit", "Resolve conflicts merging {} into {}"
+                       .format(branch, current))
+
+    def start(self):
+        for name in self.names:
+            self.write(name, self.sizes(self.rnd))
+        self.git.check("init")
+        self.git.start()
+        self.git.check("add", *self.names)
+        self.git.check("commit", "Add {} files".format(len(self.names)))
+
+    def linear(self, commits):
+        while self.made < commits:
+            self.commit("master", 0)
+
+    def branchy(self, commits):
+        cycle = 0
+        final = self.branches * self.topic_commits + 1
+        while self.made + final < commits:
+            cycle += 1
+            topics = ["topic{}_{}".format(cycle, i + 1)
+                      for i in range(self.branches)]
+            self.fork(topics, commits - self.made - final - 2 * len(topics))
+            for _ in range(self.rnd.randint(1, 2)):
+                self.commit("master", 0)
+            for topic in topics:
+                self.merge(topic, "master", 0)
+                self.git.check("rm-branch", topic)
+        self.fork(["open{}".format(i + 1) for i in range(self.branches)],
+                  final - 1)
+        self.commit("master", 0)
+
+    def fork(self, topics, budget):
+        for topic in topics:
+            self.git.check("branch", topic)
+        for i, topic in enumerate(topics):
+            self.git.check("checkout", topic)
+            n = min(self.rnd.randint(1, 2 * self.topic_commits - 1),
+                    max(1, budget // len(topics)))
+            for _ in range(n):
+                self.commit(topic, i + 1)
+        self.git.check("checkout", "master")
+
+    def crisscross(self, commits):
+        sides = ["open{}".format(i + 1) for i in range(self.branches)]
+        for side in sides:
+            self.git.check("branch", side)
+        r = 0
+        while self.made + len(sides) + 1 < commits:
+            side, lane = sides[r % len(sides)], r % len(sides) + 1
+            r += 1
+            self.commit("master", 0)
+            self.git.check("branch", "snap_master")
+            self.git.check("checkout", side)
+            self.commit(side, lane)
+            self.git.check("branch", "snap_side")
+            self.merge("snap_master", side, lane)
+            self.git.check("checkout", "master")
+            self.merge("snap_side", "master", 0)
+            self.git.check("rm-branch", "snap_master")
+            self.git.check("rm-branch", "snap_side")
+        for i, side in enumerate(sides):
+            self.git.check("checkout", side)
+            self.commit(side, i + 1)
+        self.git.check("checkout", "master")
+        self.commit("master", 0)
+
+if __name__ == "__main__":
+    files, commits, branches = 1000, 200, 4
+    topology = "branchy"
+    sizes = "lognormal:2048:1.0"
+    max_size = 1 << 20
+    change, topic_commits, seed = 3, 5, 61
+    prog_dir = None
+    use_daemon = True
+    verbose = False
+
+    try:
+        opts, args = \
+            getopt(sys.argv[1:], '',
+                   ['files=', 'commits=', 'branches=', 'topology=', 'sizes=',
+                    'max-size=', 'change=', 'topic-commits=', 'seed=',
+                    'progdir=', 'no-daemon', 'verbose', 'help'])
+        for opt, val in opts:
+            if opt == "--files":
+                files = int(val)
+            elif opt == "--commits":
+                commits = int(val)
+            elif opt == "--branches":
+                branches = int(val)
+            elif opt == "--topology":
+                topology = val
+            elif opt == "--sizes":
+                sizes = val
+            elif opt == "--max-size":
+                max_size = int(val)
+            elif opt == "--change":
+                change = int(val)
+            elif opt == "--topic-commits":
+                topic_commits = int(val)
+            elif opt == "--seed":
+                seed = int(val)
+            elif opt == "--progdir":
+                prog_dir = abspath(val)
+            elif opt == "--no-daemon":
+                use_daemon = False
+            elif opt == "--verbose":
+                verbose = True
+            elif opt == "--help":
+                print(USAGE)
+                sys.exit(0)
+    except (GetoptError, ValueError):
+        Usage()
+    if len(args) != 1:
+        Usage()
+    if topology not in ("linear", "branchy", "crisscross") \
+       or min(files, commits, branches, change, topic_commits) < 0 \
+       or topology == "crisscross" and branches == 0:
+        Usage()
+    if topology == "linear":
+        branches = 0
+    if files < branches + 1 or change == 0 or topic_commits == 0:
+        print("Need at least one file for each branch, and to change at "
+              "least one file.", file=sys.stderr)
+        sys.exit(1)
+    repo = args[0]
+    if exists(repo) and listdir(repo):
+        print("{} is not empty.".format(repo), file=sys.stderr)
+        sys.exit(1)
+    if not exists(repo):
+        mkdir(repo)
+    try:
+        sizes = sizeDistribution(sizes, max_size)
+    except ValueError as excp:
+        print(excp.args[0], file=sys.stderr)
+        sys.exit(1)
+    if prog_dir is None:
+        prog_dir = findProgDir()
+
+    start = time.monotonic()
+    git = Gitlet(repo, prog_dir, use_daemon, verbose)
+    gen = Generator(git, files, branches, sizes, change, topic_commits, seed)
+    try:
+        gen.start()
+        if topology == "linear" or branches == 0:
+            gen.linear(commits)
+        elif topology == "branchy":
+            gen.branchy(commits)
+        else:
+            gen.crisscross(commits)
+    except ValueError as excp:
+        print("FAILED ({})".format(excp.args[0]), file=sys.stderr)
+        sys.exit(1)
+    finally:
+        git.stop()
+    print("Generated {} files and {} commits ({} merges, {} with "
+          "conflicts) with {} open branches in {:.1f}s. The repository "
+          "takes {} bytes."
+          .format(files, gen.made + 1, gen.merges, gen.conflicts,
+                  0 if topology == "linear" else branches,
+                  time.monotonic() - start,
+                  treeSize(join(repo, ".gitlet"))))
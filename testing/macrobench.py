@@ -0,0 +1,287 @@
+import sys, re, json, random, time
+from getopt import getopt, GetoptError
+from os import getpid
+from os.path import abspath, basename, dirname, exists, join
+from shutil import copytree, rmtree
+from tempfile import mkdtemp
+from genrepo import Gitlet, findProgDir, requestSize, treeSize
+
+SHORT_USAGE = """\
+Usage: python3 macrobench.py OPTIONS REPO
+   OPTIONS may include
+       --samples=N      Number of timed runs of each command (default 20).
+       --warmup=N       Number of untimed runs of each command first
+                        (default 1).
+       --commands=LIST  Comma-separated commands to time (default
+                        status,log,global-log,find,checkout,reset,merge).
+       --daemon         Serve the commands from a gitlet daemon instead of
+                        starting a JVM for each one.
+       --in-place       Run against REPO itself instead of a copy.
+       --out=FILE       Also write the results to FILE as JSON.
+       --seed=S         Seed for the random choices (default 61).
+       --progdir=DIR    Directory or JAR files containing gitlet
+                        application.
+"""
+
+USAGE = SHORT_USAGE + """\
+
+Times gitlet commands end to end against the repository REPO, usually one
+made by genrepo.py, and reports for each command the 50th and 99th
+percentile and the largest of its latencies, and the mean number of bytes
+it read and wrote.
+
+The commands run are
+   status, log, global-log   as they are;
+   find         with the message of a commit on master chosen at random;
+   checkout     switching between master and the branch open1;
+   reset        to a commit on master chosen at random;
+   merge        merging a branch named openN into master, which must not
+                be an ancestor of master.
+After each reset and merge, master is reset to where it was, untimed, so
+that every run starts from the same place. Since that leaves behind the
+merge commits, the commands are run against a copy of REPO unless
+--in-place is given. Commands that REPO has no branches for are skipped.
+
+The bytes read and written are those the command passed to read and write
+system calls, from /proc/PID/io, less what it printed; what gitlet reads
+through its memory-mapped packs and indexes is not counted. When each
+command runs in a JVM of its own, these include what the JVM reads and
+writes to start, which is reported as the command "(startup)", the cost
+of a gitlet command that does nothing. With --daemon, they are the
+daemon's alone, and startup is not reported. The bytes the command caused
+to be written to the disk are reported as "disk KiB"."""
+
+COMMANDS = ["status", "log", "global-log", "find", "checkout", "reset",
+            "merge"]
+MASTER = "master"
+COMMIT_LINE = re.compile(r"===\ncommit ([0-9a-f]{40})\n(?:Merge: .*\n)?"
+                         r"Date: .*\n(.*)\n")
+
+def Usage():
+    print(SHORT_USAGE, file=sys.stderr)
+    sys.exit(1)
+
+def ioCounters(pid):
+    counters = {}
+    with open("/proc/{}/io".format(pid)) as inp:
+        for line in inp:
+            key, value = line.split(":")
+            counters[key] = int(value)
+    return counters
+
+def percentile(values, p):
+    ordered = sorted(values)
+    k = max(0, -(-len(ordered) * p // 100) - 1)
+    return ordered[int(k)]
+
+class Bench:
+    """Runs and measures gitlet commands in a repository."""
+
+    def __init__(self, git, rnd):
+        self.git = git
+        self.rnd = rnd
+        self.branches = self.status("=== Branches ===")
+        history = COMMIT_LINE.findall(self.check("log"))
+        self.head = history[0][0]
+        self.ancestors = [c for c, _ in history[1:]]
+        self.messages = [m for _, m in history]
+        self.open = sorted(b.lstrip("*") for b in self.branches
+                           if re.match(r"\*?open\d+$", b))
+        self.samples = {}
+
+    def check(self, *args):
+        status, out, err = self.git.run(*args)
+        if status != 0 or err:
+            raise ValueError("gitlet {} failed: {}"
+                             .format(" ".join(args), (err or out).strip()))
+        return out
+
+    def status(self, header):
+        out = self.check("status").split("\n")
+        k = out.index(header) + 1
+        return out[k:out.index("", k)]
+
+    def measure(self, args):
+        pid = self.git.daemon.pid if self.git.daemon else getpid()
+        before = ioCounters(pid)
+        start = time.perf_counter()
+        status, out, err = self.git.run(*args)
+        elapsed = time.perf_counter() - start
+        after = ioCounters(pid)
+        if status != 0 or err:
+            raise ValueError("gitlet {} failed: {}"
+                             .format(" ".join(args), (err or out).strip()))
+        printed = len(out.encode()) + len(err.encode())
+        read = after["rchar"] - before["rchar"]
+        written = after["wchar"] - before["wchar"]
+        if self.git.daemon:
+            read -= requestSize(args)
+            written -= 12 + printed
+        else:
+            read -= printed
+            written -= printed
+        disk = after["write_bytes"] - before["write_bytes"]
+        return out, elapsed, read, written, disk
+
+    def record(self, name, sample):
+        self.samples.setdefault(name, []).append(sample[1:])
+
+    def restore(self):
+        self.check("reset", self.head)
+
+    def runs(self, name):
+        if name == "(startup)":
+            return lambda: self.measure([])
+        elif name in ("status", "log", "global-log"):
+            return lambda: self.measure([name])
+        elif name == "find":
+            return lambda: self.measure(["find",
+                                         self.rnd.choice(self.messages)])
+        elif name == "checkout" and self.open:
+            return lambda: self.measure(
+                ["checkout", self.open[0] if self.onMaster() else MASTER])
+        elif name == "reset" and self.ancestors:
+            return lambda: self.afterwards(
+                self.measure(["reset", self.rnd.choice(self.ancestors)]),
+                self.restore)
+        elif name == "merge" and self.open:
+            return lambda: self.afterwards(self.merge(), self.restore)
+        return None
+
+    def afterwards(self, result, action):
+        action()
+        return result
+
+    def onMaster(self):
+        return "*" + MASTER in self.status("=== Branches ===")
+
+    def merge(self):
+        branch = self.rnd.choice(self.open)
+        result = self.measure(["merge", branch])
+        message = result[0].strip()
+        if message not in ("", "Encountered a merge conflict."):
+            raise ValueError("cannot merge {}: {}".format(branch, message))
+        return result
+
+    def run(self, name, warmup, samples):
+        op = self.runs(name)
+        if op is None:
+            print("{}: skipped, since the repository has no branches "
+                  "for it".format(name))
+            return
+        if not self.onMaster():
+            self.check("checkout", MASTER)
+        for k in range(warmup):
+            op()
+        for k in range(samples):
+            self.record(name, op())
+        if not self.onMaster():
+            self.check("checkout", MASTER)
+
+    def report(self):
+        print("{:<12} {:>7} {:>10} {:>10} {:>10} {:>11} {:>11} {:>11}"
+              .format("command", "samples", "p50 ms", "p99 ms", "max ms",
+                      "read KiB", "written KiB", "disk KiB"))
+        results = {}
+        for name, samples in self.samples.items():
+            millis = [s[0] * 1000 for s in samples]
+            mean = lambda k: sum(s[k] for s in samples) / len(samples)
+            results[name] = {
+                "samples": len(samples),
+                "latency_ms": {
+                    "p50": percentile(millis, 50),
+                    "p99": percentile(millis, 99),
+                    "mean": sum(millis) / len(millis),
+                    "min": min(millis),
+                    "max": max(millis),
+                    "raw": millis,
+                },
+                "bytes_read": mean(1),
+                "bytes_written": mean(2),
+                "disk_bytes_written": mean(3),
+            }
+            r = results[name]
+            print("{:<12} {:>7} {:>10.1f} {:>10.1f} {:>10.1f} {:>11.1f} "
+                  "{:>11.1f} {:>11.1f}"
+                  .format(name, len(samples), r["latency_ms"]["p50"],
+                          r["latency_ms"]["p99"], r["latency_ms"]["max"],
+                          r["bytes_read"] / 1024, r["bytes_written"] / 1024,
+                          r["disk_bytes_written"] / 1024))
+        return results
+
+if __name__ == "__main__":
+    samples, warmup, seed = 20, 1, 61
+    commands = COMMANDS
+    use_daemon = False
+    in_place = False
+    out_file = None
+    prog_dir = None
+
+    try:
+        opts, args = \
+            getopt(sys.argv[1:], '',
+                   ['samples=', 'warmup=', 'commands=', 'daemon',
+                    'in-place', 'out=', 'seed=', 'progdir=', 'help'])
+        for opt, val in opts:
+            if opt == "--samples":
+                samples = int(val)
+            elif opt == "--warmup":
+                warmup = int(val)
+            elif opt == "--commands":
+                commands = val.split(",")
+            elif opt == "--daemon":
+                use_daemon = True
+            elif opt == "--in-place":
+                in_place = True
+            elif opt == "--out":
+                out_file = val
+            elif opt == "--seed":
+                seed = int(val)
+            elif opt == "--progdir":
+                prog_dir = abspath(val)
+            elif opt == "--help":
+                print(USAGE)
+                sys.exit(0)
+    except (GetoptError, ValueError):
+        Usage()
+    if len(args) != 1 or samples < 1 or warmup < 0 \
+       or any(c not in COMMANDS for c in commands):
+        Usage()
+    repo = args[0]
+    if not exists(join(repo, ".gitlet")):
+        print("{} is not a gitlet repository.".format(repo), file=sys.stderr)
+        sys.exit(1)
+    if prog_dir is None:
+        prog_dir = findProgDir()
+
+    work = repo
+    if not in_place:
+        work = join(mkdtemp(prefix="macrobench"), basename(abspath(repo)))
+        copytree(repo, work)
+    git = Gitlet(work, prog_dir, use_daemon)
+    try:
+        git.start()
+        bench = Bench(git, random.Random(seed))
+        print("{}: {} bytes, {} commits on master, {} branches, {}"
+              .format(repo, treeSize(join(work, ".gitlet")),
+                      len(bench.messages), len(bench.branches),
+                      "daemon" if use_daemon else "a JVM for each command"))
+        if not use_daemon:
+            bench.run("(startup)", warmup, samples)
+        for name in commands:
+            bench.run(name, warmup, samples)
+        results = bench.report()
+    except ValueError as excp:
+        print("FAILED ({})".format(excp.args[0]), file=sys.stderr)
+        sys.exit(1)
+    finally:
+        git.stop()
+        if not in_place:
+            rmtree(dirname(work), ignore_errors=True)
+
+    if out_file:
+        with open(out_file, "w") as out:
+            json.dump({"repo": abspath(repo),
+                       "mode": "daemon" if use_daemon else "process",
+                       "warmup": warmup, "results": results}, out, indent=2)
+            out.write("\n")